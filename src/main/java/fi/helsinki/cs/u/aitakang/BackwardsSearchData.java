@@ -1,5 +1,7 @@
 package fi.helsinki.cs.u.aitakang;
 
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 import java.util.TreeSet;
 
@@ -7,83 +9,287 @@ import java.util.TreeSet;
  * The alphabet used in the text, the lesser-than character counts and a rank
  * function - the extra pre-processed data needed for backwards search.
  * 
+ * Optionally also a sampled suffix array, making this a full FM-index: every
+ * sampleRate'th text position is stored and the rest are resolved by stepping
+ * backwards in the text with the LF-mapping until a sampled one is reached.
+ * 
  * TODO: Rename
  */
 public class BackwardsSearchData {
 
 	public static final int BLOCK_SIZE = 1024;
 
+	/**
+	 * The available implementations of rank. Blocks store character counts
+	 * at every BLOCK_SIZE'th position and scan the BWT from there, the
+	 * wavelet tree answers in O(log sigma) without scanning.
+	 */
+	public enum RankBackend { blocks, wavelet };
+
 	/** The set of characters used in the text. */
 	public final TreeSet<Character> alphabet;
 	
-	/** Counts of lesser characters in the text. */
+	/**
+	 * The characters of the alphabet in ascending order. A character's index
+	 * here is its dense symbol id, which is what counts, rank and the
+	 * searches operate on.
+	 */
+	public final char[] symbols;
+	
+	/** Counts of lesser characters in the text, indexed by symbol id. */
 	public final int[] counts;
 	
-	/** Burrows-Wheeler Transform of the text. */
-	protected final char[] bwt;
+	/**
+	 * Burrows-Wheeler Transform of the text, as symbol ids. Each id takes one
+	 * byte if the alphabet has at most 256 symbols, two otherwise. Held in a
+	 * buffer so that it can be either on the heap or mapped from an index
+	 * file.
+	 */
+	protected final ByteBuffer bwt;
+	
+	/** Bytes per symbol id in the BWT buffer, 1 or 2. */
+	protected final int bwtWidth;
 	
-	/** Character-count-in-BWT lookup blocks. */
-	protected final int[][] blocks;
+	/**
+	 * Symbol-count-in-BWT lookup blocks, indexed by symbol id. The blocks are
+	 * laid out one after another, each sigma counts long. Null if using
+	 * wavelet tree.
+	 */
+	protected final IntBuffer blocks;
+	
+	/** Wavelet tree over the BWT. Null if using blocks. */
+	protected final WaveletTree wavelet;
+	
+	/** Distance between sampled text positions, 0 if not sampled. */
+	public final int sampleRate;
+	
+	/** Marks the suffix array positions whose value is sampled. */
+	protected final RankBitVector sampled;
+	
+	/** The sampled suffix array values, in suffix array order. */
+	protected final int[] samples;
+	
+	
+	public BackwardsSearchData(CharSequence text, int[] sa) {
+		this(text, sa, RankBackend.blocks);
+	}
 	
+	public BackwardsSearchData(CharSequence text, int[] sa, RankBackend backend) {
+		this(text, sa, backend, 0);
+	}
 	
-	public BackwardsSearchData(String text, int[] sa) {
+	/**
+	 * @param sampleRate Store every sampleRate'th text position of the suffix
+	 *        array for locate(), or 0 to store none.
+	 */
+	public BackwardsSearchData(CharSequence text, int[] sa, RankBackend backend,
+			int sampleRate) {
 		this.alphabet = new TreeSet<Character>();
-		for(char c: text.toCharArray())
-			this.alphabet.add(c);
+		for(int i = 0; i < text.length(); i++)
+			this.alphabet.add(text.charAt(i));
+		
+		this.symbols = new char[this.alphabet.size()];
+		int id = 0;
+		for(char c: this.alphabet)
+			this.symbols[id++] = c;
 		
-		this.counts = lesserThanCounts(text, sa, this.alphabet);
+		this.counts = lesserThanCounts(text, sa, this.symbols);
+		this.bwtWidth = this.symbols.length <= 256 ? 1 : 2;
 		this.bwt = burrowsWheelerTransform(text, sa);
 		
-		// Calculate lookup blocks.
-		// Block N contain the counts of each character up to, but not
-		// including, bwt[N * BLOCK_SIZE]
-		this.blocks = new int[sa.length / BLOCK_SIZE + 1][];
+		if(backend == RankBackend.wavelet) {
+			this.blocks = null;
+			
+			int[] codes = new int[sa.length];
+			for(int i = 0; i < codes.length; i++)
+				codes[i] = bwtSymbol(i);
+			this.wavelet = new WaveletTree(codes, this.symbols.length);
+		}
+		else {
+			this.blocks = IntBuffer.wrap(rankBlocks());
+			this.wavelet = null;
+		}
+		
+		this.sampleRate = sampleRate;
+		if(sampleRate > 0) {
+			// Text position 0 must be sampled, since LF-stepping can't go
+			// past the start of the text
+			this.sampled = new RankBitVector(sa.length);
+			int count = 0;
+			for(int i = 0; i < sa.length; i++) {
+				if(sa[i] % sampleRate == 0) {
+					this.sampled.set(i);
+					count += 1;
+				}
+			}
+			this.sampled.seal();
+			
+			this.samples = new int[count];
+			for(int i = 0, j = 0; i < sa.length; i++)
+				if(sa[i] % sampleRate == 0)
+					this.samples[j++] = sa[i];
+		}
+		else {
+			this.sampled = null;
+			this.samples = null;
+		}
+	}
+	
+	/**
+	 * Reassemble backwards search data from its stored parts, such as
+	 * the buffers mapped from an index file. Only the block rank backend can
+	 * be stored, and the suffix array is not sampled.
+	 */
+	public BackwardsSearchData(char[] symbols, int[] counts, ByteBuffer bwt,
+			int bwtWidth, IntBuffer blocks) {
+		this.alphabet = new TreeSet<Character>();
+		for(char c: symbols)
+			this.alphabet.add(c);
+		
+		this.symbols = symbols;
+		this.counts = counts;
+		this.bwt = bwt;
+		this.bwtWidth = bwtWidth;
+		this.blocks = blocks;
+		this.wavelet = null;
 		
-		int[] running = new int[this.alphabet.last() + 1];
-		for(int i = 0; i < bwt.length; i++) {
+		this.sampleRate = 0;
+		this.sampled = null;
+		this.samples = null;
+	}
+	
+	/**
+	 * Calculate lookup blocks.
+	 * Block N contain the counts of each symbol up to, but not including,
+	 * bwt[N * BLOCK_SIZE]
+	 */
+	protected int[] rankBlocks() {
+		int sigma = this.symbols.length;
+		int length = length();
+		int[] blocks = new int[(length / BLOCK_SIZE + 1) * sigma];
+		
+		int[] running = new int[sigma];
+		for(int i = 0; i < length; i++) {
 			if(i % BLOCK_SIZE == 0)
-				this.blocks[i / BLOCK_SIZE] = Arrays.copyOf(running, running.length);
-			running[bwt[i]] += 1;
+				System.arraycopy(running, 0, blocks, (i / BLOCK_SIZE) * sigma, sigma);
+			running[bwtSymbol(i)] += 1;
 		}
+		
+		// The end position needs a block too, when it's a multiple of the
+		// block size
+		if(length % BLOCK_SIZE == 0)
+			System.arraycopy(running, 0, blocks, (length / BLOCK_SIZE) * sigma, sigma);
+		
+		return blocks;
+	}
+	
+	/**
+	 * Length of the text, and so of the BWT and the suffix array.
+	 */
+	public int length() {
+		return bwt.limit() / bwtWidth;
+	}
+	
+	/**
+	 * The symbol id at position N of the BWT.
+	 */
+	public int bwtSymbol(int n) {
+		return bwtWidth == 1 ? bwt.get(n) & 0xff : bwt.getChar(n << 1);
+	}
+	
+	/**
+	 * Number of distinct characters in the text.
+	 */
+	public int sigma() {
+		return symbols.length;
 	}
 	
 	/**
-	 * The rank of a character at position N is the number of it's occurrences
+	 * The dense symbol id of a character, or -1 if the character does not
+	 * occur in the text.
+	 */
+	public int symbol(char c) {
+		int id = Arrays.binarySearch(symbols, c);
+		return id < 0 ? -1 : id;
+	}
+	
+	/**
+	 * The rank of a symbol at position N is the number of it's occurrences
 	 * in the BWT of the text before position N.
 	 */
-	public int rank(char c, int n) {
-		int rank = blocks[n / BLOCK_SIZE][c];
+	public int rank(int symbol, int n) {
+		if(wavelet != null)
+			return wavelet.rank(symbol, n);
+		
+		int rank = blocks.get((n / BLOCK_SIZE) * symbols.length + symbol);
 		
 		for(int i = (n / BLOCK_SIZE) * BLOCK_SIZE; i < n; i++) {
-			if(bwt[i] == c)
+			if(bwtSymbol(i) == symbol)
 				rank += 1;
 		}
 		
 		return rank;
 	}
 	
+	/**
+	 * The LF-mapping: the suffix array position of the suffix starting one
+	 * character before the suffix at position N.
+	 */
+	public int lf(int n) {
+		int c = bwtSymbol(n);
+		return counts[c] + rank(c, n);
+	}
 	
 	/**
-	 * Generate the BWT of the text using the suffix array.
+	 * The text position of the suffix at suffix array position N, the same as
+	 * sa[n]. Requires the suffix array to have been sampled.
 	 */
-	protected char[] burrowsWheelerTransform(String text, int[] sa) {
-		char[] bwt = new char[sa.length];
-		for(int i = 0; i < sa.length; i++)
-			bwt[i] = sa[i] == 0 ? Searches.EOT : text.charAt(sa[i] - 1);
+	public int locate(int n) {
+		if(samples == null)
+			throw new IllegalStateException("Suffix array was not sampled");
+		
+		int steps = 0;
+		while(!sampled.get(n)) {
+			n = lf(n);
+			steps += 1;
+		}
+		
+		return samples[sampled.rank1(n)] + steps;
+	}
+	
+	
+	/**
+	 * Generate the BWT of the text, as symbol ids, using the suffix array.
+	 */
+	protected ByteBuffer burrowsWheelerTransform(CharSequence text, int[] sa) {
+		// Character to symbol id lookup for the construction
+		int[] ids = new int[this.symbols[this.symbols.length - 1] + 1];
+		for(int id = 0; id < this.symbols.length; id++)
+			ids[this.symbols[id]] = id;
+		
+		ByteBuffer bwt = ByteBuffer.allocate(sa.length * this.bwtWidth);
+		for(int i = 0; i < sa.length; i++) {
+			int id = ids[sa[i] == 0 ? Searches.EOT : text.charAt(sa[i] - 1)];
+			
+			if(this.bwtWidth == 1)
+				bwt.put(i, (byte)id);
+			else
+				bwt.putChar(i << 1, (char)id);
+		}
 		
 		return bwt;
 	}
 	
 	/**
-	 * Build the lesser-character-than counts for each character in the range
-	 * [\0, max(alphabet)]. That is, for each character, the number of other
-	 * in the text lesser than that character.
+	 * Build the lesser-character-than counts for each symbol of the
+	 * alphabet. That is, for each symbol, the number of characters in the
+	 * text lesser than that symbol's character.
 	 */
-	protected static int[] lesserThanCounts(String text, int[] sa,
-			TreeSet<Character> alphabet) {
-		int[] counts = new int[alphabet.last() + 1];
+	protected static int[] lesserThanCounts(CharSequence text, int[] sa,
+			char[] symbols) {
+		int[] counts = new int[symbols.length];
 		for(int i = 0, n = 0; n < counts.length; n++) {
-			char c = (char)n;
+			char c = symbols[n];
 			
 			while(i < sa.length && text.charAt(sa[i]) < c)
 				i += 1;
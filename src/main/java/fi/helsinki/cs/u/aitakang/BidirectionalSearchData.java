@@ -0,0 +1,52 @@
+package fi.helsinki.cs.u.aitakang;
+
+/**
+ * A bidirectional FM-index: backwards search data over both the text and the
+ * reversed text. A pattern occurrence then has a range in each, and the pair
+ * can be extended by a character to either the left or the right.
+ *
+ * The reversed text is the text without its terminating EOT reversed, plus
+ * the EOT. Read cyclically, as the backwards search does, it is exactly the
+ * reverse of the text.
+ */
+public class BidirectionalSearchData {
+
+	/** Backwards search data of the text. */
+	public final BackwardsSearchData forward;
+
+	/** Backwards search data of the reversed text. */
+	public final BackwardsSearchData reverse;
+
+
+	public BidirectionalSearchData(BackwardsSearchData forward,
+			BackwardsSearchData reverse) {
+		if(forward.sigma() != reverse.sigma() || forward.length() != reverse.length())
+			throw new IllegalArgumentException(
+					"The reverse search data is not over the reversed text");
+
+		this.forward = forward;
+		this.reverse = reverse;
+	}
+
+	/**
+	 * Reverse the text for indexing, keeping the EOT at the end.
+	 */
+	public static String reverse(CharSequence text) {
+		int n = text.length();
+		StringBuilder sb = new StringBuilder(n);
+
+		for(int i = n - 2; i >= 0; i--)
+			sb.append(text.charAt(i));
+		sb.append(text.charAt(n - 1));
+
+		return sb.toString();
+	}
+
+	public int length() {
+		return this.forward.length();
+	}
+
+	public int sigma() {
+		return this.forward.sigma();
+	}
+}
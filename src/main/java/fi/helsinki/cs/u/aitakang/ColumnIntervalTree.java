@@ -0,0 +1,454 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * The centered interval tree of IntervalTree over intervals given as columns
+ * of begins and ends, searched by row id, so that no object is needed for an
+ * interval. Everything is stored in int buffers, which are either arrays
+ * on the heap or mapped from a MetadataFile.
+ *
+ * The nodes are numbered in breadth first order, so the top levels that
+ * every search passes through are next to each other. The tree isn't
+ * complete, so the children are stored as indexes rather than implied by the
+ * position. Each node's intervals are a slice of shared buffers holding them
+ * in ascending order of begin points and descending order of end points,
+ * each with its other end point and row.
+ *
+ * The endpoints are likewise a sorted buffer of points, with the other end
+ * point and the row of the intervals they begin, or complemented, end.
+ *
+ * As every search only reads the tree's own buffers, the columns aren't
+ * needed after building it.
+ */
+public class ColumnIntervalTree {
+
+	/** Receives the rows found by a search. */
+	public interface RowVisitor {
+		public void visit(int row);
+	}
+
+	/** Receives the rows found by a batch search, with their occurrence. */
+	public interface OccurrenceRowVisitor {
+		public void visit(int occurrence, int row);
+	}
+
+
+	/** Number of buffers the tree is stored in. */
+	static final int SECTIONS = 13;
+
+	/** Batch searches of fewer positions search each one separately. */
+	private static final int MIN_BATCH = 16;
+
+	/** A batch sweep jumps ahead rather than pass more endpoints than this. */
+	private static final int MAX_SKIP = 64;
+
+	/** Node center points and children, -1 for none. */
+	private final IntBuffer centers;
+	private final IntBuffer lefts;
+	private final IntBuffer rights;
+
+	/** The slice of the interval buffers for each node, and one past the last. */
+	private final IntBuffer offsets;
+
+	/** Each node's interval begins, ascending, with their ends and rows. */
+	private final IntBuffer begins;
+	private final IntBuffer beginEnds;
+	private final IntBuffer beginRows;
+
+	/** Each node's interval ends, descending, with their begins and rows. */
+	private final IntBuffer ends;
+	private final IntBuffer endBegins;
+	private final IntBuffer endRows;
+
+	/**
+	 * Interval endpoints, inclusive, ascending, with the intervals' other end
+	 * points, and the rows of the intervals they begin or, complemented, end.
+	 */
+	private final IntBuffer points;
+	private final IntBuffer pointOthers;
+	private final IntBuffer pointRows;
+
+
+	/**
+	 * Index the first count rows of the columns.
+	 */
+	public ColumnIntervalTree(int[] begins, int[] ends, int count) {
+		// Rows by begin point, as IntervalTree orders its intervals
+		long[] keyed = new long[count];
+		for(int row = 0; row < count; row++)
+			keyed[row] = ((long)begins[row] << 32) | row;
+		Arrays.sort(keyed);
+
+		int[] rows = new int[count];
+		for(int i = 0; i < count; i++)
+			rows[i] = (int)keyed[i];
+
+		int[] centers = new int[count];
+		int[] lefts = new int[count];
+		int[] rights = new int[count];
+		int[] offsets = new int[count + 1];
+		int[] beginRows = new int[count];
+
+		// Split the rows into nodes breadth first. Each queued segment of
+		// rows, still in begin order, is split into the node's own intervals
+		// and the segments to its left and right, which are queued. Every
+		// node has at least the interval its center is the begin of, so there
+		// are at most count nodes.
+		int[] queueFrom = new int[count];
+		int[] queueTo = new int[count];
+		int[] queueParent = new int[count];
+		int[] split = new int[count];
+		int head = 0;
+		int tail = 0;
+		if(count > 0) {
+			queueFrom[tail] = 0;
+			queueTo[tail] = count;
+			queueParent[tail] = -1;
+			tail++;
+		}
+
+		int k = 0;
+		for(; head < tail; head++) {
+			int node = head;
+			int from = queueFrom[head];
+			int to = queueTo[head];
+
+			// The same center as IntervalTree picks, so the trees are alike
+			int center = begins[rows[from + (to - from) / 2]];
+
+			centers[node] = center;
+			lefts[node] = -1;
+			rights[node] = -1;
+			offsets[node] = k;
+
+			int parent = queueParent[head];
+			if(parent >= 0) {
+				if(center < centers[parent])
+					lefts[parent] = node;
+				else
+					rights[parent] = node;
+			}
+
+			// The node's intervals in begin order, the others into the split
+			// buffer, left ones from the start and right ones from the end
+			int leftEnd = from;
+			int rightBegin = to;
+			for(int i = from; i < to; i++) {
+				int row = rows[i];
+				if(ends[row] <= center)
+					split[leftEnd++] = row;
+				else if(begins[row] <= center)
+					beginRows[k++] = row;
+				else
+					split[--rightBegin] = row;
+			}
+
+			// The right ones were written backwards
+			for(int i = rightBegin, j = to - 1; i < j; i++, j--) {
+				int swap = split[i];
+				split[i] = split[j];
+				split[j] = swap;
+			}
+			System.arraycopy(split, from, rows, from, leftEnd - from);
+			System.arraycopy(split, rightBegin, rows, rightBegin, to - rightBegin);
+
+			if(leftEnd > from) {
+				queueFrom[tail] = from;
+				queueTo[tail] = leftEnd;
+				queueParent[tail] = node;
+				tail++;
+			}
+			if(to > rightBegin) {
+				queueFrom[tail] = rightBegin;
+				queueTo[tail] = to;
+				queueParent[tail] = node;
+				tail++;
+			}
+		}
+
+		int nodes = tail;
+		offsets[nodes] = k;
+
+		int[] sortedBegins = new int[count];
+		int[] beginEnds = new int[count];
+		int[] sortedEnds = new int[count];
+		int[] endBegins = new int[count];
+		int[] endRows = new int[count];
+
+		for(int node = 0; node < nodes; node++) {
+			int from = offsets[node];
+			int to = offsets[node + 1];
+
+			long[] byEnd = new long[to - from];
+			for(int i = from; i < to; i++) {
+				int row = beginRows[i];
+				sortedBegins[i] = begins[row];
+				beginEnds[i] = ends[row];
+				byEnd[i - from] = ((long)-ends[row] << 32) | row;
+			}
+			Arrays.sort(byEnd);
+
+			for(int i = from; i < to; i++) {
+				int row = (int)byEnd[i - from];
+				sortedEnds[i] = ends[row];
+				endBegins[i] = begins[row];
+				endRows[i] = row;
+			}
+		}
+
+		// Endpoints, ordered by row at the same point, so an interval's begin
+		// comes before its own end but not necessarily before other rows'
+		// ends. The searches check the other end, so the order doesn't matter.
+		keyed = new long[2 * count];
+		for(int row = 0; row < count; row++) {
+			keyed[2 * row] = ((long)begins[row] << 32) | (2L * row);
+			// Range end-point is exclusive, but we only want inclusions in endpoints
+			keyed[2 * row + 1] = ((long)(ends[row] - 1) << 32) | (2L * row + 1);
+		}
+		Arrays.sort(keyed);
+
+		int[] points = new int[2 * count];
+		int[] pointOthers = new int[2 * count];
+		int[] pointRows = new int[2 * count];
+		for(int i = 0; i < keyed.length; i++) {
+			points[i] = (int)(keyed[i] >> 32);
+			int key = (int)keyed[i];
+			int row = key >>> 1;
+			if((key & 1) == 0) {
+				pointOthers[i] = ends[row];
+				pointRows[i] = row;
+			}
+			else {
+				pointOthers[i] = begins[row];
+				pointRows[i] = ~row;
+			}
+		}
+
+		this.centers = IntBuffer.wrap(centers, 0, nodes).slice();
+		this.lefts = IntBuffer.wrap(lefts, 0, nodes).slice();
+		this.rights = IntBuffer.wrap(rights, 0, nodes).slice();
+		this.offsets = IntBuffer.wrap(offsets, 0, nodes + 1).slice();
+		this.begins = IntBuffer.wrap(sortedBegins);
+		this.beginEnds = IntBuffer.wrap(beginEnds);
+		this.beginRows = IntBuffer.wrap(beginRows);
+		this.ends = IntBuffer.wrap(sortedEnds);
+		this.endBegins = IntBuffer.wrap(endBegins);
+		this.endRows = IntBuffer.wrap(endRows);
+		this.points = IntBuffer.wrap(points);
+		this.pointOthers = IntBuffer.wrap(pointOthers);
+		this.pointRows = IntBuffer.wrap(pointRows);
+	}
+
+	/**
+	 * A tree stored earlier, from the buffers given by sections().
+	 */
+	ColumnIntervalTree(IntBuffer[] sections) {
+		this.centers = sections[0];
+		this.lefts = sections[1];
+		this.rights = sections[2];
+		this.offsets = sections[3];
+		this.begins = sections[4];
+		this.beginEnds = sections[5];
+		this.beginRows = sections[6];
+		this.ends = sections[7];
+		this.endBegins = sections[8];
+		this.endRows = sections[9];
+		this.points = sections[10];
+		this.pointOthers = sections[11];
+		this.pointRows = sections[12];
+	}
+
+	/**
+	 * The buffers of the tree, for storing it.
+	 */
+	IntBuffer[] sections() {
+		return new IntBuffer[] { this.centers, this.lefts, this.rights,
+				this.offsets, this.begins, this.beginEnds, this.beginRows,
+				this.ends, this.endBegins, this.endRows, this.points,
+				this.pointOthers, this.pointRows };
+	}
+
+	/**
+	 * Pass the rows whose intervals overlap [begin, end) to the visitor. Each
+	 * is reported once without a set: at its begin if that is in the range,
+	 * otherwise at its last point if that is, otherwise by the point search
+	 * for the intervals containing the whole range.
+	 */
+	public void find(int begin, int end, RowVisitor visitor) {
+		for(int i = firstPoint(begin); i < this.points.limit()
+				&& this.points.get(i) < end; i++) {
+			int row = this.pointRows.get(i);
+			if(row >= 0)
+				visitor.visit(row);
+			else if(this.pointOthers.get(i) < begin)
+				visitor.visit(~row);
+		}
+
+		find(begin, false, begin, end, visitor, null);
+	}
+
+	/**
+	 * Pass the rows whose intervals contain the point to the visitor.
+	 */
+	public void find(int point, RowVisitor visitor) {
+		find(point, true, 0, 0, visitor, null);
+	}
+
+	/**
+	 * Pass the rows whose intervals overlap the ranges of the given length at
+	 * each of the first count positions to the visitor. The positions are
+	 * sorted in place, and joined with the sorted endpoints in one sweep,
+	 * keeping the intervals that have begun but not yet ended. The sweep
+	 * starts at the first range, and jumps over long stretches of endpoints
+	 * between ranges, from the intervals containing the range's begin. A few
+	 * ranges are searched one by one instead.
+	 */
+	public void find(int[] positions, int count, int length,
+			OccurrenceRowVisitor visitor) {
+		RadixSort.sort(positions, count);
+
+		Sweep sweep = new Sweep(visitor);
+
+		if(count < MIN_BATCH) {
+			for(int i = 0; i < count; i++) {
+				sweep.occurrence = i;
+				find(positions[i], positions[i] + length, sweep);
+			}
+			return;
+		}
+
+		int next = 0;
+
+		for(int i = 0; i < count; i++) {
+			int begin = positions[i];
+			int end = begin + length;
+
+			// Start over at the range, with the intervals that begin before
+			// it and contain its begin
+			if(i == 0 || (next + MAX_SKIP < this.points.limit()
+					&& this.points.get(next + MAX_SKIP) < begin)) {
+				sweep.actives = 0;
+				find(begin, false, begin, begin, null, sweep);
+				next = firstPoint(begin);
+			}
+
+			// Take in the intervals that begin before the range ends
+			for(; next < this.points.limit() && this.points.get(next) < end; next++)
+				if(this.pointRows.get(next) >= 0)
+					sweep.add(this.pointRows.get(next), this.pointOthers.get(next));
+
+			// Drop the ones that ended before it, the rest overlap it
+			for(int j = 0; j < sweep.actives;) {
+				if(sweep.activeEnds[j] <= begin) {
+					sweep.actives--;
+					sweep.active[j] = sweep.active[sweep.actives];
+					sweep.activeEnds[j] = sweep.activeEnds[sweep.actives];
+				}
+				else {
+					visitor.visit(i, sweep.active[j]);
+					j++;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Pass the rows whose intervals contain the point to the visitor: all of
+	 * them, or only those that begin before withinBegin and end after
+	 * withinEnd. If a sweep is given, they are added to it instead.
+	 */
+	private void find(int point, boolean all, int withinBegin, int withinEnd,
+			RowVisitor visitor, Sweep sweep) {
+		int node = this.centers.limit() > 0 ? 0 : -1;
+
+		while(node >= 0) {
+			int center = this.centers.get(node);
+			int from = this.offsets.get(node);
+			int to = this.offsets.get(node + 1);
+
+			// The point is the center, all of the node's intervals contain it
+			if(point == center) {
+				for(int i = from; i < to; i++)
+					if(all || (this.begins.get(i) < withinBegin && this.beginEnds.get(i) > withinEnd))
+						visit(this.beginRows.get(i), this.beginEnds.get(i), visitor, sweep);
+				return;
+			}
+			// Left of the center, those beginning early enough contain it
+			else if(point < center) {
+				for(int i = from; i < to && this.begins.get(i) <= point; i++)
+					if(all || (this.begins.get(i) < withinBegin && this.beginEnds.get(i) > withinEnd))
+						visit(this.beginRows.get(i), this.beginEnds.get(i), visitor, sweep);
+				node = this.lefts.get(node);
+			}
+			// Right of the center, those ending late enough contain it
+			else {
+				for(int i = from; i < to && this.ends.get(i) > point; i++)
+					if(all || (this.endBegins.get(i) < withinBegin && this.ends.get(i) > withinEnd))
+						visit(this.endRows.get(i), this.ends.get(i), visitor, sweep);
+				node = this.rights.get(node);
+			}
+		}
+	}
+
+	private static void visit(int row, int end, RowVisitor visitor, Sweep sweep) {
+		if(sweep != null)
+			sweep.add(row, end);
+		else
+			visitor.visit(row);
+	}
+
+	/**
+	 * The index of the first endpoint at or after the point.
+	 */
+	private int firstPoint(int point) {
+		int lo = 0;
+		int hi = this.points.limit();
+
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(this.points.get(mid) < point)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		return lo;
+	}
+
+
+	/**
+	 * The intervals a batch search has taken in and not yet dropped, with
+	 * their ends. When ranges are searched one by one, it passes on the rows
+	 * found for the current one.
+	 */
+	private static class Sweep implements RowVisitor {
+		final OccurrenceRowVisitor visitor;
+		int occurrence;
+
+		int[] active = new int[16];
+		int[] activeEnds = new int[16];
+		int actives;
+
+		Sweep(OccurrenceRowVisitor visitor) {
+			this.visitor = visitor;
+		}
+
+		void add(int row, int end) {
+			if(this.actives == this.active.length) {
+				this.active = Arrays.copyOf(this.active, 2 * this.actives);
+				this.activeEnds = Arrays.copyOf(this.activeEnds, 2 * this.actives);
+			}
+			this.active[this.actives] = row;
+			this.activeEnds[this.actives] = end;
+			this.actives++;
+		}
+
+		@Override
+		public void visit(int row) {
+			this.visitor.visit(this.occurrence, row);
+		}
+	}
+}
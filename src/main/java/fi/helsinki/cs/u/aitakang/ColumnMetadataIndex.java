@@ -0,0 +1,85 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Metadata searches over MetadataColumns. Searches by row are passed
+ * through to the columns' ColumnIntervalTree; the IntervalIndex searches
+ * make a Metadata object of each row found, so that objects only exist for
+ * the results.
+ */
+public class ColumnMetadataIndex implements IntervalIndex<Metadata<Integer>> {
+
+	public final MetadataColumns columns;
+
+	public final ColumnIntervalTree tree;
+
+	/** Makes the Metadata of the rows found, one per thread. */
+	private final ThreadLocal<RowAdapter<Metadata<Integer>>> adapters =
+			new ThreadLocal<RowAdapter<Metadata<Integer>>>() {
+		@Override
+		protected RowAdapter<Metadata<Integer>> initialValue() {
+			return new RowAdapter<Metadata<Integer>>() {
+				@Override
+				protected Metadata<Integer> interval(int row) {
+					return columns.get(row);
+				}
+			};
+		}
+	};
+
+
+	public ColumnMetadataIndex(MetadataColumns columns) {
+		columns.trim();
+
+		this.columns = columns;
+		this.tree = columns.index();
+	}
+
+	@Override
+	public List<Metadata<Integer>> find(Range range) {
+		final List<Metadata<Integer>> results = new ArrayList<>();
+
+		find(range, new IntervalVisitor<Metadata<Integer>>() {
+			@Override
+			public void visit(Metadata<Integer> interval) {
+				results.add(interval);
+			}
+		});
+
+		return results;
+	}
+
+	@Override
+	public List<Metadata<Integer>> find(int point) {
+		final List<Metadata<Integer>> results = new ArrayList<>();
+
+		find(point, new IntervalVisitor<Metadata<Integer>>() {
+			@Override
+			public void visit(Metadata<Integer> interval) {
+				results.add(interval);
+			}
+		});
+
+		return results;
+	}
+
+	@Override
+	public void find(Range range,
+			IntervalVisitor<? super Metadata<Integer>> visitor) {
+		this.adapters.get().find(this.tree, range.begin, range.end, visitor);
+	}
+
+	@Override
+	public void find(int point,
+			IntervalVisitor<? super Metadata<Integer>> visitor) {
+		this.adapters.get().find(this.tree, point, visitor);
+	}
+
+	@Override
+	public void find(int[] positions, int count, int length,
+			OccurrenceVisitor<? super Metadata<Integer>> visitor) {
+		this.adapters.get().find(this.tree, positions, count, length, visitor);
+	}
+}
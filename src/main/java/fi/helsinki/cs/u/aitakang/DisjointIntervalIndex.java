@@ -0,0 +1,178 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An interval index for metadata that is mostly disjoint, such as one
+ * interval per word. The intervals are split into a chain of disjoint ones
+ * and the rest. The chain's begins and ends are both ascending, so they are
+ * stored Elias-Fano encoded, and the chain intervals overlapping a range are
+ * those from the number of ends at or before its begin to the number of
+ * begins before its end; two rank queries. The rest, if any, are searched in
+ * an IntervalTree.
+ */
+public class DisjointIntervalIndex<T extends Range> implements IntervalIndex<T> {
+
+	/** Use the index when at least this share of intervals are in the chain. */
+	private static final double MIN_CHAIN = 0.9;
+
+	/** The chain of disjoint intervals, in order. */
+	private final Object[] chain;
+
+	private final EliasFano begins;
+	private final EliasFano ends;
+
+	/** The intervals overlapping the chain, null if none. */
+	private final IntervalTree<T> rest;
+
+
+	/**
+	 * Index the intervals with a DisjointIntervalIndex if they are mostly
+	 * disjoint, otherwise with an IntervalTree.
+	 */
+	public static <T extends Range> IntervalIndex<T> create(List<T> ranges) {
+		List<T> chain = new ArrayList<>();
+		List<T> rest = new ArrayList<>();
+		split(ranges, chain, rest);
+
+		if(chain.size() < MIN_CHAIN * ranges.size() ||
+		   (!chain.isEmpty() && chain.get(0).begin < 0))
+			return new IntervalTree<>(ranges);
+
+		return new DisjointIntervalIndex<>(chain, rest);
+	}
+
+	/**
+	 * Index the intervals, however much they overlap. The begins must not be
+	 * negative.
+	 */
+	public DisjointIntervalIndex(List<T> ranges) {
+		this(new ArrayList<T>(), new ArrayList<T>(), ranges);
+	}
+
+	private DisjointIntervalIndex(List<T> chain, List<T> rest, List<T> ranges) {
+		this(split(ranges, chain, rest), rest);
+	}
+
+	private DisjointIntervalIndex(List<T> chain, List<T> rest) {
+		this.chain = chain.toArray();
+
+		int[] points = new int[chain.size()];
+		for(int i = 0; i < points.length; i++)
+			points[i] = chain.get(i).begin;
+		this.begins = new EliasFano(points, points.length);
+
+		for(int i = 0; i < points.length; i++)
+			points[i] = chain.get(i).end;
+		this.ends = new EliasFano(points, points.length);
+
+		this.rest = rest.isEmpty() ? null : new IntervalTree<>(rest);
+	}
+
+	/**
+	 * Split the intervals into a longest chain of disjoint ones and the rest.
+	 * As in interval scheduling, the intervals are taken in order of their
+	 * ends, each into the chain if it begins after the previous one in the
+	 * chain ends. An interval containing others, such as a line or a page,
+	 * ends late and so doesn't keep the ones inside it out of the chain.
+	 * @return The chain.
+	 */
+	private static <T extends Range> List<T> split(List<T> ranges, List<T> chain,
+			List<T> rest) {
+		List<T> sorted = new ArrayList<>(ranges);
+		Collections.sort(sorted, new Comparator<Range>() {
+			@Override
+			public int compare(Range o1, Range o2) {
+				return Integer.compare(o1.end, o2.end);
+			}
+		});
+
+		for(T range: sorted) {
+			if(chain.isEmpty() || range.begin >= chain.get(chain.size() - 1).end)
+				chain.add(range);
+			else
+				rest.add(range);
+		}
+
+		return chain;
+	}
+
+
+	@Override
+	public List<T> find(Range range) {
+		final List<T> results = new ArrayList<>();
+
+		find(range, new IntervalVisitor<T>() {
+			@Override
+			public void visit(T interval) {
+				results.add(interval);
+			}
+		});
+
+		return results;
+	}
+
+	@Override
+	public List<T> find(int point) {
+		final List<T> results = new ArrayList<>();
+
+		find(point, new IntervalVisitor<T>() {
+			@Override
+			public void visit(T interval) {
+				results.add(interval);
+			}
+		});
+
+		return results;
+	}
+
+	@Override
+	public void find(Range range, IntervalVisitor<? super T> visitor) {
+		find(range.begin, range.end, visitor);
+
+		if(this.rest != null)
+			this.rest.find(range, visitor);
+	}
+
+	@Override
+	public void find(int point, IntervalVisitor<? super T> visitor) {
+		find(point, (long)point + 1, visitor);
+
+		if(this.rest != null)
+			this.rest.find(point, visitor);
+	}
+
+	@Override
+	public void find(int[] positions, int count, int length,
+			OccurrenceVisitor<? super T> visitor) {
+		RadixSort.sort(positions, count);
+
+		for(int i = 0; i < count; i++) {
+			int last = this.begins.rank((long)positions[i] + length);
+			for(int j = this.ends.rank((long)positions[i] + 1); j < last; j++)
+				visitor.visit(i, interval(j));
+		}
+
+		if(this.rest != null)
+			this.rest.find(positions, count, length, visitor);
+	}
+
+
+	/**
+	 * Pass the chain intervals overlapping [begin, end) to the visitor: those
+	 * ending after begin and beginning before end.
+	 */
+	private void find(int begin, long end, IntervalVisitor<? super T> visitor) {
+		int last = this.begins.rank(end);
+		for(int i = this.ends.rank((long)begin + 1); i < last; i++)
+			visitor.visit(interval(i));
+	}
+
+	@SuppressWarnings("unchecked")
+	private T interval(int i) {
+		return (T)this.chain[i];
+	}
+}
@@ -0,0 +1,152 @@
+package fi.helsinki.cs.u.aitakang;
+
+/**
+ * Elias-Fano encoding of a non-decreasing sequence of non-negative ints, in
+ * about 2 + log(u / n) bits per value for values below u.
+ *
+ * Each value is split into its lowBits lowest bits, stored packed, and the
+ * rest, stored in unary: value i sets bit (value >>> lowBits) + i of the upper
+ * bits. The position of every SAMPLE'th set and unset upper bit is kept, so
+ * that finding the i'th of either only scans a few words.
+ */
+public class EliasFano {
+
+	private static final int SAMPLE = 256;
+
+	/** Number of values. */
+	public final int length;
+
+	private final int lowBits;
+	private final long[] lows;
+	private final long[] highs;
+
+	/** Upper bit positions of every SAMPLE'th one and zero. */
+	private final int[] oneSamples;
+	private final int[] zeroSamples;
+
+	/** Count of zeros in the upper bits, one past the largest high part. */
+	private final int zeros;
+
+
+	/**
+	 * @param values Non-decreasing, non-negative values; the first count are
+	 *        encoded.
+	 */
+	public EliasFano(int[] values, int count) {
+		this.length = count;
+
+		int max = count > 0 ? values[count - 1] : 0;
+		int lowBits = 0;
+		while(count > 0 && ((long)count << (lowBits + 1)) <= max)
+			lowBits++;
+		this.lowBits = lowBits;
+
+		this.zeros = (max >>> lowBits) + 1;
+		int upperLength = count + this.zeros;
+
+		this.lows = new long[(int)(((long)count * lowBits + 63) >>> 6) + 1];
+		this.highs = new long[(upperLength >>> 6) + 1];
+		this.oneSamples = new int[count / SAMPLE + 1];
+		this.zeroSamples = new int[this.zeros / SAMPLE + 1];
+
+		for(int i = 0; i < count; i++) {
+			assert values[i] >= 0 && (i == 0 || values[i - 1] <= values[i]);
+
+			long bit = (long)i * lowBits;
+			long low = values[i] & ((1L << lowBits) - 1);
+			if(lowBits > 0) {
+				this.lows[(int)(bit >>> 6)] |= low << bit;
+				if((bit & 63) + lowBits > 64)
+					this.lows[(int)(bit >>> 6) + 1] |= low >>> (64 - (bit & 63));
+			}
+
+			int pos = (values[i] >>> lowBits) + i;
+			this.highs[pos >>> 6] |= 1L << pos;
+		}
+
+		for(int pos = 0, ones = 0, zeros = 0; pos < upperLength; pos++) {
+			if((this.highs[pos >>> 6] & (1L << pos)) != 0) {
+				if(ones % SAMPLE == 0)
+					this.oneSamples[ones / SAMPLE] = pos;
+				ones++;
+			}
+			else {
+				if(zeros % SAMPLE == 0)
+					this.zeroSamples[zeros / SAMPLE] = pos;
+				zeros++;
+			}
+		}
+	}
+
+	/**
+	 * The i'th value.
+	 */
+	public int get(int i) {
+		return ((select(i, true) - i) << this.lowBits) | low(i);
+	}
+
+	/**
+	 * The number of values less than x.
+	 */
+	public int rank(long x) {
+		if(x <= 0 || this.length == 0)
+			return 0;
+
+		long high = x >>> this.lowBits;
+		if(high >= this.zeros)
+			return this.length;
+
+		// The values with a smaller high part come before the high'th zero
+		int pos = high == 0 ? 0 : select((int)high - 1, false) + 1;
+		int i = pos - (int)high;
+
+		// Then those in the same bucket with a smaller low part
+		int low = (int)(x & ((1L << this.lowBits) - 1));
+		while(i < this.length && (this.highs[pos >>> 6] & (1L << pos)) != 0
+				&& low(i) < low) {
+			i++;
+			pos++;
+		}
+
+		return i;
+	}
+
+
+	private int low(int i) {
+		if(this.lowBits == 0)
+			return 0;
+
+		long bit = (long)i * this.lowBits;
+		long word = this.lows[(int)(bit >>> 6)] >>> bit;
+		if((bit & 63) + this.lowBits > 64)
+			word |= this.lows[(int)(bit >>> 6) + 1] << (64 - (bit & 63));
+
+		return (int)(word & ((1L << this.lowBits) - 1));
+	}
+
+	/**
+	 * The upper bit position of the n'th one or zero.
+	 */
+	private int select(int n, boolean ones) {
+		int pos = (ones ? this.oneSamples : this.zeroSamples)[n / SAMPLE];
+		int left = n % SAMPLE;
+
+		// Skip whole words from the sample on
+		int w = pos >>> 6;
+		long word = bits(w, ones) & (-1L << pos);
+		for(int count = Long.bitCount(word); count <= left; count = Long.bitCount(word)) {
+			left -= count;
+			word = bits(++w, ones);
+		}
+
+		// Then bits within the word
+		for(; left > 0; left--)
+			word &= word - 1;
+
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	private long bits(int w, boolean ones) {
+		return ones ? this.highs[w] : ~this.highs[w];
+	}
+}
@@ -2,7 +2,8 @@ package fi.helsinki.cs.u.aitakang;
 
 /**
  * End-point data structure composed of one end of a range, inclusive, and
- * a pointer to the range structure.
+ * a pointer to the range structure. Whether it's the beginning or the end of
+ * the range tells searches which endpoint to report the range at.
  * 
  * Should be an inner class of IntervalTree, but Java generics don't play
  * nice with arrays.
@@ -10,14 +11,17 @@ package fi.helsinki.cs.u.aitakang;
 public class Endpoint {
 	final int point;
 	final Range range;
+	final boolean isBegin;
 	
-	public Endpoint(int point, Range range) {
+	public Endpoint(int point, Range range, boolean isBegin) {
 		this.point = point;
 		this.range = range;
+		this.isBegin = isBegin;
 	}
 
 	@Override
 	public String toString() {
-		return "Endpoint [point=" + point + ", range=" + range + "]";
+		return "Endpoint [point=" + point + ", range=" + range + ", isBegin="
+				+ isBegin + "]";
 	}
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The same centered interval tree as IntervalTree, laid out in flat primitive
+ * arrays instead of node objects, so that a search reads a few contiguous
+ * arrays rather than chasing references. The tree is a ColumnIntervalTree
+ * over the intervals' begins and ends; the intervals themselves are only
+ * touched when one is reported.
+ */
+public class FlatIntervalTree<T extends Range> implements IntervalIndex<T> {
+
+	/** The intervals by row. */
+	private final Object[] intervals;
+
+	private final ColumnIntervalTree tree;
+
+	/** Maps the rows found to the intervals, one per thread. */
+	private final ThreadLocal<RowAdapter<T>> adapters = new ThreadLocal<RowAdapter<T>>() {
+		@Override
+		protected RowAdapter<T> initialValue() {
+			return new RowAdapter<T>() {
+				@Override
+				protected T interval(int row) {
+					return FlatIntervalTree.this.interval(row);
+				}
+			};
+		}
+	};
+
+
+	public FlatIntervalTree(List<T> ranges) {
+		this.intervals = ranges.toArray();
+
+		int[] begins = new int[this.intervals.length];
+		int[] ends = new int[this.intervals.length];
+		for(int row = 0; row < this.intervals.length; row++) {
+			begins[row] = ranges.get(row).begin;
+			ends[row] = ranges.get(row).end;
+		}
+
+		this.tree = new ColumnIntervalTree(begins, ends, this.intervals.length);
+	}
+
+	@Override
+	public List<T> find(Range range) {
+		final List<T> results = new ArrayList<>();
+
+		find(range, new IntervalVisitor<T>() {
+			@Override
+			public void visit(T interval) {
+				results.add(interval);
+			}
+		});
+
+		return results;
+	}
+
+	@Override
+	public List<T> find(int point) {
+		final List<T> results = new ArrayList<>();
+
+		find(point, new IntervalVisitor<T>() {
+			@Override
+			public void visit(T interval) {
+				results.add(interval);
+			}
+		});
+
+		return results;
+	}
+
+	@Override
+	public void find(Range range, IntervalVisitor<? super T> visitor) {
+		this.adapters.get().find(this.tree, range.begin, range.end, visitor);
+	}
+
+	@Override
+	public void find(int point, IntervalVisitor<? super T> visitor) {
+		this.adapters.get().find(this.tree, point, visitor);
+	}
+
+	@Override
+	public void find(int[] positions, int count, int length,
+			OccurrenceVisitor<? super T> visitor) {
+		this.adapters.get().find(this.tree, positions, count, length, visitor);
+	}
+
+
+	@SuppressWarnings("unchecked")
+	private T interval(int row) {
+		return (T)this.intervals[row];
+	}
+}
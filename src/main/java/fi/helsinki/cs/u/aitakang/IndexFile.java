@@ -0,0 +1,308 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A prebuilt text index stored on disk. Loading memory-maps the file and the
+ * searches then run directly on the mapped buffers, so startup does not
+ * depend on the text size.
+ *
+ * The file is little-endian and laid out as:
+ *
+ *  - header: magic, format version, text length, alphabet size, rank block
+ *    size, bytes per text character, bytes per BWT symbol, size, last
+ *    modified time and hash of the text file the index was built from
+ *  - alphabet, sorted ascending
+ *  - lesser character counts
+ *  - text, as UTF-16 chars or as UTF-8 bytes for a Utf8Text
+ *  - BWT, as symbol ids
+ *  - suffix array
+ *  - rank blocks
+ *
+ * Each section starts at a multiple of 8 bytes. The sections are mapped
+ * separately, so each must be under 2GB.
+ *
+ * The text file's size and last modified time let a loaded index be checked
+ * against the text it is meant for without reading it, see matches(Path).
+ * The hash is for checking the contents too, see verify(Path).
+ *
+ * Only the block rank backend with the full suffix array can be stored.
+ */
+public class IndexFile {
+
+	public static final int MAGIC = 0x58495053; // "SPIX"
+	public static final int VERSION = 4;
+
+	private static final int HEADER_SIZE = 7 * 4 + 3 * 8;
+
+	/**
+	 * Thrown when a file isn't in the format expected, such as an index of an
+	 * older version, as opposed to failing to read it.
+	 */
+	public static class FormatException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public FormatException(String message) {
+			super(message);
+		}
+	}
+
+	/** FNV-1a offset basis and prime. */
+	private static final long FNV_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/** The text, including the terminating EOT. */
+	public final CharSequence text;
+
+	/** Suffix array of the text. */
+	public final IntBuffer sa;
+
+	/** Backwards search data over the mapped BWT and rank blocks. */
+	public final BackwardsSearchData bsd;
+
+	/** Size of the text file the index was built from. */
+	public final long sourceSize;
+
+	/** Last modified time of the text file, in milliseconds. */
+	public final long sourceModified;
+
+	/** Hash of the text file the index was built from, see hash(Path). */
+	public final long sourceHash;
+
+
+	protected IndexFile(CharSequence text, IntBuffer sa, BackwardsSearchData bsd,
+			long sourceSize, long sourceModified, long sourceHash) {
+		this.text = text;
+		this.sa = sa;
+		this.bsd = bsd;
+		this.sourceSize = sourceSize;
+		this.sourceModified = sourceModified;
+		this.sourceHash = sourceHash;
+	}
+
+	/**
+	 * Write the index of the text, read from the source file, to the given
+	 * file.
+	 */
+	public static void write(Path path, Path source, CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd) throws IOException {
+		if(bsd.blocks == null || bsd.sampleRate != 0)
+			throw new IllegalArgumentException(
+					"Only unsampled, block-ranked backwards search data can be stored");
+
+		int n = bsd.length();
+		int sigma = bsd.sigma();
+		int textWidth = text instanceof Utf8Text ? 1 : 2;
+		long sourceSize = Files.size(source);
+		long sourceModified = Files.getLastModifiedTime(source).toMillis();
+		long sourceHash = hash(source);
+
+		try(FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+			buf.putInt(MAGIC);
+			buf.putInt(VERSION);
+			buf.putInt(n);
+			buf.putInt(sigma);
+			buf.putInt(BackwardsSearchData.BLOCK_SIZE);
+			buf.putInt(textWidth);
+			buf.putInt(bsd.bwtWidth);
+			buf.putLong(sourceSize);
+			buf.putLong(sourceModified);
+			buf.putLong(sourceHash);
+			pad(buf, out);
+
+			for(char c: bsd.symbols)
+				putChar(buf, out, c);
+			pad(buf, out);
+
+			for(int count: bsd.counts)
+				putInt(buf, out, count);
+			pad(buf, out);
+
+			for(int i = 0; i < n; i++)
+				put(buf, out, text.charAt(i), textWidth);
+			pad(buf, out);
+
+			for(int i = 0; i < n; i++)
+				put(buf, out, bsd.bwtSymbol(i), bsd.bwtWidth);
+			pad(buf, out);
+
+			for(int i = 0; i < n; i++)
+				putInt(buf, out, sa.get(i));
+			pad(buf, out);
+
+			for(int i = 0; i < bsd.blocks.limit(); i++)
+				putInt(buf, out, bsd.blocks.get(i));
+			pad(buf, out);
+
+			flush(buf, out);
+		}
+	}
+
+	/**
+	 * Memory-map the index stored in the given file.
+	 *
+	 * @throws FormatException if the file isn't an index of this version
+	 */
+	public static IndexFile load(Path path) throws IOException {
+		try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(in.size() < HEADER_SIZE)
+				throw new FormatException(path + " is not an index file");
+			ByteBuffer header = map(in, 0, HEADER_SIZE);
+			if(header.getInt() != MAGIC)
+				throw new FormatException(path + " is not an index file");
+
+			int version = header.getInt();
+			if(version != VERSION)
+				throw new FormatException(path + " has index format version "
+						+ version + ", expected " + VERSION);
+
+			int n = header.getInt();
+			int sigma = header.getInt();
+			int blockSize = header.getInt();
+			if(blockSize != BackwardsSearchData.BLOCK_SIZE)
+				throw new FormatException(path + " has rank block size " + blockSize
+						+ ", expected " + BackwardsSearchData.BLOCK_SIZE);
+			int textWidth = header.getInt();
+			int bwtWidth = header.getInt();
+			long sourceSize = header.getLong();
+			long sourceModified = header.getLong();
+			long sourceHash = header.getLong();
+
+			long pos = align(HEADER_SIZE);
+
+			// The alphabet and counts are small, copy them to the heap
+			char[] symbols = new char[sigma];
+			map(in, pos, 2L * sigma).asCharBuffer().get(symbols);
+			pos = align(pos + 2L * sigma);
+
+			int[] counts = new int[sigma];
+			map(in, pos, 4L * sigma).asIntBuffer().get(counts);
+			pos = align(pos + 4L * sigma);
+
+			ByteBuffer textBytes = map(in, pos, (long)textWidth * n);
+			CharSequence text = textWidth == 1 ?
+					new Utf8Text(textBytes) : textBytes.asCharBuffer();
+			pos = align(pos + (long)textWidth * n);
+
+			ByteBuffer bwt = map(in, pos, (long)bwtWidth * n);
+			pos = align(pos + (long)bwtWidth * n);
+
+			IntBuffer sa = map(in, pos, 4L * n).asIntBuffer();
+			pos = align(pos + 4L * n);
+
+			long blocksLength = (long)(n / blockSize + 1) * sigma;
+			IntBuffer blocks = map(in, pos, 4L * blocksLength).asIntBuffer();
+
+			return new IndexFile(text, sa,
+					new BackwardsSearchData(symbols, counts, bwt, bwtWidth, blocks),
+					sourceSize, sourceModified, sourceHash);
+		}
+	}
+
+	/**
+	 * Whether the index was built from the given text file, by its size and
+	 * last modified time. The file isn't read.
+	 */
+	public boolean matches(Path source) throws IOException {
+		return Files.size(source) == this.sourceSize
+				&& Files.getLastModifiedTime(source).toMillis() == this.sourceModified;
+	}
+
+	/**
+	 * Whether the index was built from the given text file, also by the hash
+	 * of its contents. This reads the whole file.
+	 */
+	public boolean verify(Path source) throws IOException {
+		return matches(source) && hash(source) == this.sourceHash;
+	}
+
+	/**
+	 * The 64-bit FNV-1a hash of the file's bytes.
+	 */
+	public static long hash(Path path) throws IOException {
+		long hash = FNV_BASIS;
+
+		try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20);
+			while(in.read(buf) >= 0) {
+				buf.flip();
+				while(buf.hasRemaining()) {
+					hash ^= buf.get() & 0xff;
+					hash *= FNV_PRIME;
+				}
+				buf.clear();
+			}
+		}
+
+		return hash;
+	}
+
+
+	static ByteBuffer map(FileChannel in, long pos, long size)
+			throws IOException {
+		return in.map(FileChannel.MapMode.READ_ONLY, pos, size)
+				.order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	static long align(long pos) {
+		return (pos + 7) & ~7L;
+	}
+
+	private static void putChar(ByteBuffer buf, FileChannel out, char c)
+			throws IOException {
+		if(buf.remaining() < 2)
+			flush(buf, out);
+		buf.putChar(c);
+	}
+
+	/**
+	 * Write a value of the given width, 1 or 2 bytes.
+	 */
+	static void put(ByteBuffer buf, FileChannel out, int value,
+			int width) throws IOException {
+		if(width == 1) {
+			if(!buf.hasRemaining())
+				flush(buf, out);
+			buf.put((byte)value);
+		}
+		else {
+			putChar(buf, out, (char)value);
+		}
+	}
+
+	static void putInt(ByteBuffer buf, FileChannel out, int i)
+			throws IOException {
+		if(buf.remaining() < 4)
+			flush(buf, out);
+		buf.putInt(i);
+	}
+
+	/**
+	 * Pad the output with zeros to the next section boundary.
+	 */
+	static void pad(ByteBuffer buf, FileChannel out) throws IOException {
+		long written = out.position() + buf.position();
+		for(long i = written; i < align(written); i++) {
+			if(!buf.hasRemaining())
+				flush(buf, out);
+			buf.put((byte)0);
+		}
+	}
+
+	static void flush(ByteBuffer buf, FileChannel out) throws IOException {
+		buf.flip();
+		while(buf.hasRemaining())
+			out.write(buf);
+		buf.clear();
+	}
+}
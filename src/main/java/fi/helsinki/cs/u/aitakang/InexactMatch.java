@@ -8,16 +8,21 @@ public class InexactMatch extends Match {
 	
 	/** String specifying edit operations leading to this match. */
 	public final String spec;
+	
+	/** Number of edits in the spec. */
+	public final int distance;
 
-	public InexactMatch(int begin, int end, int length, String spec) {
+	public InexactMatch(int begin, int end, int length, String spec,
+			int distance) {
 		super(begin, end, length);
 		
 		this.spec = spec;
+		this.distance = distance;
 	}
 
 	@Override
 	public String toString() {
 		return "InexactMatch [length=" + length + ", begin=" + begin + ", end="
-				+ end + ", spec=" + spec + "]";
+				+ end + ", spec=" + spec + ", distance=" + distance + "]";
 	}	
 }
@@ -0,0 +1,40 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.util.List;
+
+/**
+ * A searchable collection of intervals, such as the metadata ranges.
+ */
+public interface IntervalIndex<T extends Range> {
+
+	/**
+	 * Find the intervals that overlap the given range, each once.
+	 */
+	public List<T> find(Range range);
+
+	/**
+	 * Find the intervals that contain the given point.
+	 */
+	public List<T> find(int point);
+
+	/**
+	 * Pass each interval that overlaps the given range to the visitor once,
+	 * without allocating.
+	 */
+	public void find(Range range, IntervalVisitor<? super T> visitor);
+
+	/**
+	 * Pass each interval that contains the given point to the visitor,
+	 * without allocating.
+	 */
+	public void find(int point, IntervalVisitor<? super T> visitor);
+
+	/**
+	 * Find the intervals that overlap each of the ranges of the given length
+	 * starting at the first count positions, in a single sweep. The positions
+	 * are sorted in place first, and the visitor is given the index of the
+	 * position in the sorted order.
+	 */
+	public void find(int[] positions, int count, int length,
+			OccurrenceVisitor<? super T> visitor);
+}
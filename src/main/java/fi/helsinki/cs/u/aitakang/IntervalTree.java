@@ -4,9 +4,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -29,7 +27,13 @@ import java.util.TreeSet;
  * (flattened into an array) where the keys are the interval endpoints and
  * values the intervals.
  */
-public class IntervalTree<T extends Range> {
+public class IntervalTree<T extends Range> implements IntervalIndex<T> {
+	
+	/** Batch searches of fewer positions search each one separately. */
+	private static final int MIN_BATCH = 16;
+	
+	/** A batch sweep jumps ahead rather than pass more endpoints than this. */
+	private static final int MAX_SKIP = 64;
 	
 	/** Root of the interval nodes tree. */
 	protected final Node root;
@@ -93,9 +97,9 @@ public class IntervalTree<T extends Range> {
 		ArrayList<Endpoint> endpoints = new ArrayList<>();
 		
 		for(T range: ranges) {
-			endpoints.add(new Endpoint(range.begin, range));
+			endpoints.add(new Endpoint(range.begin, range, true));
 			// Range end-point is exclusive, but we only want inclusions in endpoints
-			endpoints.add(new Endpoint(range.end - 1, range));
+			endpoints.add(new Endpoint(range.end - 1, range, false));
 		}
 		
 		Collections.sort(endpoints, new Comparator<Endpoint>() {
@@ -138,10 +142,42 @@ public class IntervalTree<T extends Range> {
 	 * Find the metadata elements that overlap the given range.
 	 */
 	public List<T> find(Range range) {
-		// Construct results in a set to ensure a particular metadata object
-		// only gets included once. Use a HashSet for fast membership queries.
-		Set<T> results = new HashSet<>();
+		final List<T> results = new ArrayList<>();
+		
+		find(range, new IntervalVisitor<T>() {
+			@Override
+			public void visit(T interval) {
+				results.add(interval);
+			}
+		});
 		
+		return results;
+	}
+	
+	/**
+	 * Find the metadata elements that contain the given point.
+	 */
+	public List<T> find(int point) {
+		final List<T> results = new ArrayList<>();
+		
+		find(point, new IntervalVisitor<T>() {
+			@Override
+			public void visit(T interval) {
+				results.add(interval);
+			}
+		});
+		
+		return results;
+	}
+	
+	/**
+	 * Pass the metadata elements that overlap the given range to the
+	 * visitor. Each element is passed once without keeping a set of those
+	 * seen: at its start point if that is in the range, otherwise at its end
+	 * point if that is, and otherwise it contains the whole range and is
+	 * found by the point search.
+	 */
+	public void find(Range range, IntervalVisitor<? super T> visitor) {
 		// Binary search the first endpoint included in the range
 		int first = 0;
 		int lo = 0;
@@ -167,37 +203,98 @@ public class IntervalTree<T extends Range> {
 		// Assuming there are any
 		if (lo <= hi) {
 			for (int i = first; i < this.endpoints.length; i++) {
-				if (this.endpoints[i].point < range.end)
-					results.add((T)this.endpoints[i].range);
-				else
+				Endpoint endpoint = this.endpoints[i];
+				if (endpoint.point >= range.end)
 					break;
+				
+				// An interval whose start is also in the range is reported
+				// at the start
+				if (endpoint.isBegin || endpoint.range.begin < range.begin)
+					visitor.visit((T)endpoint.range);
 			}
 		}
 		
 		// Remaining results to be found are the intervals that contain the
 		// query interval. Do a point search to find them.
-		results.addAll(find(range.begin));
-		
-		return new ArrayList<>(results);
+		find(this.root, range.begin, range, visitor);
 	}
 	
 	/**
-	 * Find the metadata elements that contain the given point.
+	 * Find the metadata elements that overlap the ranges at each of the given
+	 * positions. Instead of searching the tree for each range, the sorted
+	 * ranges are joined with the sorted endpoints: the elements that begin
+	 * before a range ends are taken into an active list as the sweep passes
+	 * their start point, and those that end before it begins are dropped from
+	 * it. Every element left in the list overlaps the range.
+	 * 
+	 * The sweep starts at the first range, and where the next range is far
+	 * ahead, jumps to it with the elements containing its start point as the
+	 * active list. A few ranges are searched one by one instead.
 	 */
-	public List<T> find(int point) {
-		ArrayList<T> results = new ArrayList<>();
+	@SuppressWarnings("unchecked")
+	public void find(int[] positions, int count, int length,
+			OccurrenceVisitor<? super T> visitor) {
+		RadixSort.sort(positions, count);
+		
+		if(count < MIN_BATCH) {
+			Occurrence occurrence = new Occurrence(visitor);
+			for(int i = 0; i < count; i++) {
+				occurrence.occurrence = i;
+				find(new Range(positions[i], positions[i] + length), occurrence);
+			}
+			return;
+		}
 		
-		find(this.root, point, results);
+		Active active = new Active();
+		int next = 0;
 		
-		return results;
+		for(int i = 0; i < count; i++) {
+			int begin = positions[i];
+			int end = begin + length;
+			
+			// Start over at the range, with the elements that begin before
+			// it and contain its start point
+			if(i == 0 || (next + MAX_SKIP < this.endpoints.length
+					&& this.endpoints[next + MAX_SKIP].point < begin)) {
+				active.size = 0;
+				active.point = begin;
+				find(this.root, begin, null, active);
+				next = firstEndpoint(begin);
+			}
+			
+			// Take in the elements that begin before the range ends
+			for(; next < this.endpoints.length && this.endpoints[next].point < end; next++)
+				if(this.endpoints[next].isBegin)
+					active.add(this.endpoints[next].range);
+			
+			// Drop the ones that ended before it, the rest overlap it
+			for(int j = 0; j < active.size;) {
+				if(active.ranges[j].end <= begin) {
+					active.ranges[j] = active.ranges[--active.size];
+				}
+				else {
+					visitor.visit(i, (T)active.ranges[j]);
+					j++;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Pass the metadata elements that contain the given point to the visitor.
+	 */
+	public void find(int point, IntervalVisitor<? super T> visitor) {
+		find(this.root, point, null, visitor);
 	}
 	
 	
 	/**
-	 * Recursively gather the intervals containing the given point into the
-	 * accumulator list.
+	 * Recursively pass the intervals containing the given point to the
+	 * visitor. If a range is given, only the intervals that also extend past
+	 * both of its ends are passed.
 	 */
-	protected void find(Node node, int point, ArrayList<T> results) {
+	protected void find(Node node, int point, Range within,
+			IntervalVisitor<? super T> visitor) {
 		if(node == null)
 			return;
 		
@@ -205,7 +302,7 @@ public class IntervalTree<T extends Range> {
 		// center point.
 		if(point == node.center) {
 			for(int i = 0; i < node.elemsByBegin.length; i++)
-				results.add((T)node.elemsByBegin[i]);
+				visit((T)node.elemsByBegin[i], within, visitor);
 		}
 		// The point is left of this node's center. Some of the intervals may
 		// contain it, if they begin farther to the left.
@@ -213,13 +310,13 @@ public class IntervalTree<T extends Range> {
 			for(int i = 0; i < node.elemsByBegin.length; i++) {
 				T elem = (T)node.elemsByBegin[i];
 				if(elem.begin <= point) // Inclusive
-					results.add(elem);
+					visit(elem, within, visitor);
 				else
 					break;
 			}
 			
 			// Recurse to left child, there might be more
-			find(node.left, point, results);
+			find(node.left, point, within, visitor);
 		}
 		// The point is right of this node's center. Some of the intervals may
 		// contain it, if they begin farther to the right.
@@ -227,16 +324,40 @@ public class IntervalTree<T extends Range> {
 			for(int i = 0; i < node.elemsByEnd.length; i++) {
 				T elem = (T)node.elemsByEnd[i];
 				if(elem.end > point) // Exclusive
-					results.add(elem);
+					visit(elem, within, visitor);
 				else
 					break;
 			}
 			
 			// Recurse to right child, there might be more
-			find(node.right, point, results);
+			find(node.right, point, within, visitor);
 		}
 	}
 	
+	private void visit(T elem, Range within, IntervalVisitor<? super T> visitor) {
+		if(within == null ||
+		   (elem.begin < within.begin && elem.end > within.end))
+			visitor.visit(elem);
+	}
+	
+	/**
+	 * Index of the first endpoint at or after the point.
+	 */
+	private int firstEndpoint(int point) {
+		int lo = 0;
+		int hi = this.endpoints.length;
+		
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(this.endpoints[mid].point < point)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		
+		return lo;
+	}
+	
 	/**
 	 * Find the lowest starting point among the given intervals.
 	 */
@@ -313,4 +434,44 @@ public class IntervalTree<T extends Range> {
 					+ ", elemsByEnd=" + Arrays.toString(elemsByEnd) + "]";
 		}
 	}
+	
+	/**
+	 * Passes the elements found for one range of a batch search on with its
+	 * occurrence.
+	 */
+	private class Occurrence implements IntervalVisitor<T> {
+		final OccurrenceVisitor<? super T> visitor;
+		int occurrence;
+		
+		Occurrence(OccurrenceVisitor<? super T> visitor) {
+			this.visitor = visitor;
+		}
+		
+		@Override
+		public void visit(T interval) {
+			this.visitor.visit(this.occurrence, interval);
+		}
+	}
+	
+	/**
+	 * The elements a batch sweep has taken in and not yet dropped. A point
+	 * search visiting it adds the elements that begin before the point.
+	 */
+	private static class Active implements IntervalVisitor<Range> {
+		Range[] ranges = new Range[16];
+		int size;
+		int point;
+		
+		void add(Range range) {
+			if(this.size == this.ranges.length)
+				this.ranges = Arrays.copyOf(this.ranges, 2 * this.size);
+			this.ranges[this.size++] = range;
+		}
+		
+		@Override
+		public void visit(Range range) {
+			if(range.begin < this.point)
+				add(range);
+		}
+	}
 }
@@ -0,0 +1,10 @@
+package fi.helsinki.cs.u.aitakang;
+
+/**
+ * Receives the intervals found by an IntervalIndex search one at a time, so
+ * that the search needn't build a result list.
+ */
+public interface IntervalVisitor<T extends Range> {
+
+	public void visit(T interval);
+}
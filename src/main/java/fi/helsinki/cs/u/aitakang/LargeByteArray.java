@@ -0,0 +1,66 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A long-indexed array of bytes stored off-heap, either allocated or mapped
+ * from a file, for texts and BWTs larger than 2^31 bytes.
+ *
+ * The bytes are kept in buffers of CHUNK_SIZE bytes each, as a single buffer
+ * can only be indexed by an int.
+ */
+public class LargeByteArray {
+
+	private static final int CHUNK_SHIFT = 30;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+
+	/** Number of bytes. */
+	public final long length;
+
+	protected final ByteBuffer[] chunks;
+
+
+	public LargeByteArray(long length) {
+		this(length, new ByteBuffer[chunkCount(length)]);
+
+		for(int i = 0; i < this.chunks.length; i++)
+			this.chunks[i] = ByteBuffer.allocateDirect(chunkLength(length, i));
+	}
+
+	protected LargeByteArray(long length, ByteBuffer[] chunks) {
+		this.length = length;
+		this.chunks = chunks;
+	}
+
+	/**
+	 * Map length bytes of the file starting at pos.
+	 */
+	public static LargeByteArray map(FileChannel in, long pos, long length)
+			throws IOException {
+		ByteBuffer[] chunks = new ByteBuffer[chunkCount(length)];
+		for(int i = 0; i < chunks.length; i++)
+			chunks[i] = in.map(FileChannel.MapMode.READ_ONLY,
+					pos + ((long)i << CHUNK_SHIFT), chunkLength(length, i));
+
+		return new LargeByteArray(length, chunks);
+	}
+
+	public byte get(long i) {
+		return this.chunks[(int)(i >>> CHUNK_SHIFT)].get((int)(i & (CHUNK_SIZE - 1)));
+	}
+
+	public void set(long i, byte value) {
+		this.chunks[(int)(i >>> CHUNK_SHIFT)].put((int)(i & (CHUNK_SIZE - 1)), value);
+	}
+
+
+	private static int chunkCount(long length) {
+		return (int)((length + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+	}
+
+	private static int chunkLength(long length, int chunk) {
+		return (int)Math.min(CHUNK_SIZE, length - ((long)chunk << CHUNK_SHIFT));
+	}
+}
@@ -0,0 +1,31 @@
+package fi.helsinki.cs.u.aitakang;
+
+/**
+ * A match in a LargeText: an interval of the suffix array, [begin, end), as
+ * long positions, and the length of the matching substring.
+ */
+public class LargeMatch {
+
+	/** Index of the first suffix in the match, inclusive. */
+	public final long begin;
+
+	/** Index of the last suffix in the match, exclusive. */
+	public final long end;
+
+	/** Length of the match. */
+	public final int length;
+
+	public LargeMatch(long begin, long end, int length) {
+		assert begin < end;
+
+		this.begin = begin;
+		this.end = end;
+		this.length = length;
+	}
+
+	@Override
+	public String toString() {
+		return "LargeMatch [begin=" + begin + ", end=" + end + ", length="
+				+ length + "]";
+	}
+}
@@ -0,0 +1,148 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * Metadata over a LargeText, with long begins and ends and int values.
+ *
+ * There are at most twice as many distinct offsets as intervals, so the
+ * offsets are replaced by their index among the sorted distinct ones, and
+ * the intervals indexed by a ColumnIntervalTree over those. A long range is
+ * searched as the range of indexes of the offsets inside it: an interval
+ * overlaps [begin, end) when it begins before the first offset at or after
+ * end, and ends after the last offset at or before begin.
+ */
+public class LargeMetadataIndex {
+
+	private final long[] begins;
+	private final long[] ends;
+	private final int[] values;
+
+	/** The distinct offsets, ascending. */
+	private final long[] offsets;
+
+	/** The tree over the intervals' offset indexes. */
+	private final ColumnIntervalTree tree;
+
+
+	/**
+	 * Index the first count rows of the columns.
+	 */
+	public LargeMetadataIndex(long[] begins, long[] ends, int[] values, int count) {
+		this.begins = Arrays.copyOf(begins, count);
+		this.ends = Arrays.copyOf(ends, count);
+		this.values = Arrays.copyOf(values, count);
+
+		long[] offsets = new long[2 * count];
+		System.arraycopy(this.begins, 0, offsets, 0, count);
+		System.arraycopy(this.ends, 0, offsets, count, count);
+		Arrays.sort(offsets);
+
+		int distinct = 0;
+		for(int i = 0; i < offsets.length; i++)
+			if(i == 0 || offsets[i] != offsets[i - 1])
+				offsets[distinct++] = offsets[i];
+		this.offsets = Arrays.copyOf(offsets, distinct);
+
+		int[] beginIndexes = new int[count];
+		int[] endIndexes = new int[count];
+		for(int row = 0; row < count; row++) {
+			beginIndexes[row] = Arrays.binarySearch(this.offsets, this.begins[row]);
+			endIndexes[row] = Arrays.binarySearch(this.offsets, this.ends[row]);
+		}
+
+		this.tree = new ColumnIntervalTree(beginIndexes, endIndexes, count);
+	}
+
+	/**
+	 * Read the metadata, converting its char offsets to byte offsets into
+	 * the text. The values must be ints.
+	 */
+	public static LargeMetadataIndex read(Reader reader, LargeText text)
+			throws IOException {
+		long[] offsets = new long[32];
+		int[] values = new int[16];
+		int count = 0;
+
+		try(MetadataReader metadata = new MetadataReader(reader)) {
+			while(metadata.next()) {
+				if(metadata.payload() != null)
+					throw new JsonSyntaxException("Metadata value is not an int: "
+							+ metadata.payload());
+
+				if(count == values.length) {
+					offsets = Arrays.copyOf(offsets, 4 * count);
+					values = Arrays.copyOf(values, 2 * count);
+				}
+
+				offsets[2 * count] = metadata.longBegin();
+				offsets[2 * count + 1] = metadata.longEnd();
+				values[count] = metadata.value();
+				count++;
+			}
+		}
+
+		offsets = text.toByteOffsets(Arrays.copyOf(offsets, 2 * count));
+
+		long[] begins = new long[count];
+		long[] ends = new long[count];
+		for(int row = 0; row < count; row++) {
+			begins[row] = offsets[2 * row];
+			ends[row] = offsets[2 * row + 1];
+		}
+
+		return new LargeMetadataIndex(begins, ends, values, count);
+	}
+
+	public int size() {
+		return this.begins.length;
+	}
+
+	public long begin(int row) {
+		return this.begins[row];
+	}
+
+	public long end(int row) {
+		return this.ends[row];
+	}
+
+	public int value(int row) {
+		return this.values[row];
+	}
+
+	/**
+	 * Pass the rows whose intervals overlap [begin, end) to the visitor, each
+	 * once.
+	 */
+	public void find(long begin, long end, ColumnIntervalTree.RowVisitor visitor) {
+		// Index of the last offset at or before begin, and of the first at
+		// or after end
+		int first = upperBound(begin) - 1;
+		int last = upperBound(end - 1);
+
+		this.tree.find(first, last, visitor);
+	}
+
+
+	/**
+	 * The number of offsets at or before the point.
+	 */
+	private int upperBound(long point) {
+		int lo = 0;
+		int hi = this.offsets.length;
+
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(this.offsets[mid] <= point)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		return lo;
+	}
+}
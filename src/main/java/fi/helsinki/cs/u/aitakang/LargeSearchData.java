@@ -0,0 +1,127 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.util.Arrays;
+
+/**
+ * Backwards search data over a LargeText, with long positions: the alphabet,
+ * the lesser-than character counts, the BWT as symbol ids, rank blocks and
+ * the suffix array. The BWT, the blocks and the suffix array are off-heap and
+ * long indexed, so the text can be larger than 2^31 characters.
+ *
+ * Rank is as with BackwardsSearchData's blocks: the counts of each symbol at
+ * every BLOCK_SIZE'th position, and a scan of the BWT from there. The counts
+ * are stored in 40 bits.
+ */
+public class LargeSearchData {
+
+	public static final int BLOCK_SIZE = 1024;
+
+	/** The characters of the text, ascending, indexed by symbol id. */
+	public final char[] symbols;
+
+	/** Counts of lesser characters in the text, indexed by symbol id. */
+	public final long[] counts;
+
+	/** Suffix array of the text. */
+	public final Packed40Array sa;
+
+	/** Burrows-Wheeler Transform of the text, as symbol ids. */
+	protected final LargeByteArray bwt;
+
+	/** Symbol counts at the start of each block, sigma per block. */
+	protected final Packed40Array blocks;
+
+
+	public LargeSearchData(LargeText text, Packed40Array sa) {
+		long n = text.length();
+
+		long[] occurrences = new long[256];
+		for(long i = 0; i < n; i++)
+			occurrences[text.charAt(i)] += 1;
+
+		int sigma = 0;
+		for(long count: occurrences)
+			if(count > 0)
+				sigma += 1;
+
+		this.symbols = new char[sigma];
+		this.counts = new long[sigma];
+		int[] ids = new int[256];
+		long total = 0;
+		for(int c = 0, id = 0; c < occurrences.length; c++) {
+			if(occurrences[c] == 0)
+				continue;
+
+			this.symbols[id] = (char)c;
+			this.counts[id] = total;
+			ids[c] = id++;
+			total += occurrences[c];
+		}
+
+		this.sa = sa;
+
+		this.bwt = new LargeByteArray(n);
+		for(long i = 0; i < n; i++) {
+			long pos = sa.get(i);
+			this.bwt.set(i, (byte)ids[pos == 0 ? Searches.EOT : text.charAt(pos - 1)]);
+		}
+
+		// Block N holds the counts up to, but not including, bwt[N * BLOCK_SIZE]
+		this.blocks = new Packed40Array((n / BLOCK_SIZE + 1) * sigma);
+		long[] running = new long[sigma];
+		for(long i = 0; i < n; i++) {
+			if(i % BLOCK_SIZE == 0)
+				for(int id = 0; id < sigma; id++)
+					this.blocks.set((i / BLOCK_SIZE) * sigma + id, running[id]);
+			running[bwtSymbol(i)] += 1;
+		}
+		if(n % BLOCK_SIZE == 0)
+			for(int id = 0; id < sigma; id++)
+				this.blocks.set((n / BLOCK_SIZE) * sigma + id, running[id]);
+	}
+
+	/**
+	 * Length of the text, and so of the BWT and the suffix array.
+	 */
+	public long length() {
+		return this.bwt.length;
+	}
+
+	public int sigma() {
+		return this.symbols.length;
+	}
+
+	/**
+	 * The dense symbol id of a character, or -1 if the character does not
+	 * occur in the text.
+	 */
+	public int symbol(char c) {
+		int id = Arrays.binarySearch(this.symbols, c);
+		return id < 0 ? -1 : id;
+	}
+
+	public int bwtSymbol(long n) {
+		return this.bwt.get(n) & 0xff;
+	}
+
+	/**
+	 * The number of occurrences of the symbol in the BWT before position N.
+	 */
+	public long rank(int symbol, long n) {
+		long block = n / BLOCK_SIZE;
+		long rank = this.blocks.get(block * this.symbols.length + symbol);
+
+		for(long i = block * BLOCK_SIZE; i < n; i++)
+			if(bwtSymbol(i) == symbol)
+				rank += 1;
+
+		return rank;
+	}
+
+	/**
+	 * The text position of the suffix at suffix array position N.
+	 */
+	public long locate(long n) {
+		return this.sa.get(n);
+	}
+}
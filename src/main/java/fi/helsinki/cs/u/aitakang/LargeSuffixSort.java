@@ -0,0 +1,178 @@
+package fi.helsinki.cs.u.aitakang;
+
+/**
+ * Suffix array construction for a LargeText, into a Packed40Array, with the
+ * same output as sais.suffixsort on the same bytes.
+ *
+ * This is Larsson and Sadakane's prefix doubling. The suffixes are first
+ * grouped by their first character, each ranked by the last suffix array
+ * index of its group. Each round then sorts every group of more than one
+ * suffix by the rank of the suffix h characters later, in place, and splits
+ * it into new groups by that rank. Groups of one are final, and runs of them
+ * are skipped in later rounds: the first suffix array entry of a run is
+ * overwritten with the run's length, flagged by the top bit, and the suffix
+ * array is rebuilt from the ranks at the end. Texts can so have fewer than
+ * 2^39 characters.
+ *
+ * Besides the suffix array, only the ranks are needed, so the construction
+ * takes 10 bytes per text position, off-heap.
+ */
+public class LargeSuffixSort {
+
+	/** Flags a suffix array entry holding the length of a sorted run. */
+	private static final long SKIP = 1L << 39;
+
+	/** Ranges shorter than this are insertion sorted. */
+	private static final int INSERTION_THRESHOLD = 16;
+
+
+	public static Packed40Array suffixsort(LargeText text) {
+		long n = text.length();
+		if(n >= SKIP)
+			throw new IllegalArgumentException("Text too large: " + n);
+		Packed40Array sa = new Packed40Array(n);
+		Packed40Array rank = new Packed40Array(n);
+
+		// Bucket the suffixes by their first character
+		long[] starts = new long[257];
+		for(long i = 0; i < n; i++)
+			starts[text.charAt(i) + 1] += 1;
+		for(int c = 1; c < starts.length; c++)
+			starts[c] += starts[c - 1];
+
+		long[] next = new long[256];
+		System.arraycopy(starts, 0, next, 0, next.length);
+		for(long i = 0; i < n; i++) {
+			int c = text.charAt(i);
+			sa.set(next[c]++, i);
+			rank.set(i, starts[c + 1] - 1);
+		}
+
+		for(long h = 1; ; h *= 2) {
+			boolean sorted = true;
+
+			// Start of the run of sorted suffixes before lo, -1 if none
+			long run = -1;
+
+			for(long lo = 0; lo < n;) {
+				long value = sa.get(lo);
+				long hi = (value & SKIP) != 0 ?
+						lo + (value & ~SKIP) : rank.get(value) + 1;
+
+				if((value & SKIP) != 0 || hi - lo == 1) {
+					if(run < 0)
+						run = lo;
+				}
+				else {
+					if(run >= 0)
+						sa.set(run, SKIP | (lo - run));
+					run = -1;
+
+					sorted = false;
+					sort(sa, rank, h, lo, hi);
+					split(sa, rank, h, lo, hi);
+				}
+
+				lo = hi;
+			}
+
+			if(run >= 0)
+				sa.set(run, SKIP | (n - run));
+
+			if(sorted)
+				break;
+		}
+
+		// Every suffix is now ranked by its index
+		for(long i = 0; i < n; i++)
+			sa.set(rank.get(i), i);
+
+		return sa;
+	}
+
+
+	/**
+	 * The sort key of the suffix at index j: the rank of the suffix h
+	 * characters later, plus one. A suffix shorter than h + 1 has none, and
+	 * sorts before any that does.
+	 */
+	private static long key(Packed40Array sa, Packed40Array rank, long h, long j) {
+		long i = sa.get(j) + h;
+		return i < rank.length ? rank.get(i) + 1 : 0;
+	}
+
+	/**
+	 * Three-way quicksort the group sa[lo, hi) by key.
+	 */
+	private static void sort(Packed40Array sa, Packed40Array rank, long h,
+			long lo, long hi) {
+		while(hi - lo > INSERTION_THRESHOLD) {
+			long pivot = key(sa, rank, h, lo + (hi - lo) / 2);
+
+			// [lo, lt) is less than the pivot, [gt, hi) greater
+			long lt = lo;
+			long gt = hi;
+			for(long i = lo; i < gt;) {
+				long k = key(sa, rank, h, i);
+				if(k < pivot)
+					swap(sa, lt++, i++);
+				else if(k > pivot)
+					swap(sa, i, --gt);
+				else
+					i++;
+			}
+
+			// Recurse into the smaller side, so the depth stays logarithmic
+			if(lt - lo < hi - gt) {
+				sort(sa, rank, h, lo, lt);
+				lo = gt;
+			}
+			else {
+				sort(sa, rank, h, gt, hi);
+				hi = lt;
+			}
+		}
+
+		for(long i = lo + 1; i < hi; i++) {
+			long suffix = sa.get(i);
+			long k = key(sa, rank, h, i);
+
+			long j = i - 1;
+			while(j >= lo && key(sa, rank, h, j) > k) {
+				sa.set(j + 1, sa.get(j));
+				j -= 1;
+			}
+			sa.set(j + 1, suffix);
+		}
+	}
+
+	/**
+	 * Split the sorted group sa[lo, hi) into groups of equal keys, ranking
+	 * each suffix by the last index of its new group. The ranks are updated
+	 * from the end, so the keys that are ranks in this group are read as the
+	 * group's old rank.
+	 */
+	private static void split(Packed40Array sa, Packed40Array rank, long h,
+			long lo, long hi) {
+		long end = hi - 1;
+		long previous = -1;
+
+		for(long j = hi - 1; j >= lo; j--) {
+			long k = key(sa, rank, h, j);
+			if(k > lo && k <= hi)
+				k = hi;
+
+			if(j < hi - 1 && k != previous)
+				end = j;
+			previous = k;
+
+			rank.set(sa.get(j), end);
+		}
+	}
+
+	private static void swap(Packed40Array sa, long i, long j) {
+		long tmp = sa.get(i);
+		sa.set(i, sa.get(j));
+		sa.set(j, tmp);
+	}
+}
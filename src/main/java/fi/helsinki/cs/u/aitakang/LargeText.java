@@ -0,0 +1,78 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A UTF-8 text too large for a CharSequence, as its bytes indexed by long
+ * positions. As in Utf8Text, each byte is one char in the range [0, 255], and
+ * positions are byte offsets. The text is followed by the terminating EOT,
+ * which isn't stored, so the file can be mapped as it is.
+ */
+public class LargeText {
+
+	protected final LargeByteArray bytes;
+
+
+	public LargeText(LargeByteArray bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Memory-map the text in the given file.
+	 */
+	public static LargeText map(Path path) throws IOException {
+		try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			return new LargeText(LargeByteArray.map(in, 0, in.size()));
+		}
+	}
+
+	/**
+	 * Length of the text, including the EOT.
+	 */
+	public long length() {
+		return this.bytes.length + 1;
+	}
+
+	public char charAt(long index) {
+		return index == this.bytes.length ?
+				Searches.EOT : (char)(this.bytes.get(index) & 0xff);
+	}
+
+	/**
+	 * Convert UTF-16 char offsets into the decoded text to byte offsets into
+	 * this text, in one pass over the text.
+	 */
+	public long[] toByteOffsets(long[] charOffsets) {
+		long[] sorted = Arrays.copyOf(charOffsets, charOffsets.length);
+		Arrays.sort(sorted);
+		long[] converted = new long[sorted.length];
+
+		int next = 0;
+		long chars = 0;
+		for(long i = 0; i < length() && next < sorted.length; i++) {
+			int b = charAt(i);
+
+			// Continuation bytes don't start a char
+			if((b & 0xc0) == 0x80)
+				continue;
+
+			while(next < sorted.length && sorted[next] <= chars)
+				converted[next++] = i;
+
+			// Four byte sequences are a surrogate pair in UTF-16
+			chars += b >= 0xf0 ? 2 : 1;
+		}
+		while(next < sorted.length)
+			converted[next++] = length();
+
+		long[] result = new long[charOffsets.length];
+		for(int i = 0; i < charOffsets.length; i++)
+			result[i] = converted[Arrays.binarySearch(sorted, charOffsets[i])];
+
+		return result;
+	}
+}
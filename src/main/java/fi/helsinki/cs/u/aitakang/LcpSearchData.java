@@ -0,0 +1,84 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.nio.IntBuffer;
+
+/**
+ * The longest common prefix array of the suffix array, and the LCPs needed by
+ * LCP-accelerated binary search.
+ *
+ * Binary search over [-1, n) always visits the same midpoints, so for each
+ * midpoint M of a search interval (L, R) we store LCP(L, M) and LCP(M, R).
+ * With those the search never re-compares characters it has already matched
+ * against both interval ends, giving O(m + log n) character comparisons.
+ */
+public class LcpSearchData {
+
+	/** lcp[i] is the LCP of the suffixes at sa[i - 1] and sa[i], lcp[0] = 0. */
+	public final int[] lcp;
+
+	/** LCP of the midpoint and the left end of its search interval. */
+	protected final int[] llcp;
+
+	/** LCP of the midpoint and the right end of its search interval. */
+	protected final int[] rlcp;
+
+
+	public LcpSearchData(CharSequence text, IntBuffer sa) {
+		this.lcp = kasai(text, sa);
+
+		int n = this.lcp.length;
+		this.llcp = new int[n];
+		this.rlcp = new int[n];
+		fill(-1, n);
+	}
+
+	/**
+	 * Calculate the LCP array with Kasai et al.'s algorithm, in linear time.
+	 */
+	protected static int[] kasai(CharSequence text, IntBuffer sa) {
+		int n = sa.limit();
+
+		int[] rank = new int[n];
+		for(int i = 0; i < n; i++)
+			rank[sa.get(i)] = i;
+
+		// The LCP of a suffix with its predecessor is at most one less than
+		// that of the suffix one position earlier in the text
+		int[] lcp = new int[n];
+		int h = 0;
+		for(int i = 0; i < n; i++) {
+			if(rank[i] > 0) {
+				int j = sa.get(rank[i] - 1);
+				while(i + h < n && j + h < n && text.charAt(i + h) == text.charAt(j + h))
+					h += 1;
+
+				lcp[rank[i]] = h;
+				if(h > 0)
+					h -= 1;
+			}
+			else {
+				h = 0;
+			}
+		}
+
+		return lcp;
+	}
+
+	/**
+	 * Recursively fill in the midpoint LCPs of the binary search interval
+	 * (L, R), returning LCP(L, R). The ends -1 and n have LCP 0 with
+	 * anything.
+	 */
+	private int fill(int l, int r) {
+		int n = this.lcp.length;
+
+		if(r - l <= 1)
+			return l < 0 || r >= n ? 0 : this.lcp[r];
+
+		int m = (l + r) >>> 1;
+		this.llcp[m] = fill(l, m);
+		this.rlcp[m] = fill(m, r);
+
+		return l < 0 || r >= n ? 0 : Math.min(this.llcp[m], this.rlcp[m]);
+	}
+}
@@ -1,18 +1,26 @@
 package fi.helsinki.cs.u.aitakang;
 
+import java.io.Closeable;
 import java.io.FileReader;
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import sais.sais;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
 public class Main {
 	
@@ -24,41 +32,237 @@ public class Main {
 		String textRepeat = args[3];
 		String metaRepeat = args[4];
 		
+		// Optional settings, given as name=value pairs after the required
+		// arguments
+		Map<String, String> options = parseOptions(args, 5);
+		BackwardsSearchData.RankBackend rankBackend =
+				BackwardsSearchData.RankBackend.valueOf(option(options, "rank", "blocks"));
+		// FM-index mode: keep only every sampleRate'th suffix array value
+		int sampleRate = Integer.parseInt(option(options, "sample", "0"));
+		// Index the text as UTF-8 bytes instead of UTF-16 chars
+		boolean utf8 = option(options, "encoding", "utf16").equals("utf8");
+		// Threads for the parallel options
+		int threads = Integer.parseInt(option(options, "threads",
+				"" + Runtime.getRuntime().availableProcessors()));
+		// Suffix array construction: sais, or prefix doubling on this many
+		// threads
+		int saThreads = option(options, "sa", "sais").equals("parallel") ?
+				threads : 0;
+		// Split inexact backwards searches over a pool of threads
+		ForkJoinPool searchPool = option(options, "search", "sequential").equals("parallel") ?
+				new ForkJoinPool(threads) : null;
+		// Limits on each inexact binary or backwards search, sequential or
+		// parallel, 0 for none
+		SearchBudget budget = new SearchBudget(
+				Long.parseLong(option(options, "nodes", "0")),
+				Integer.parseInt(option(options, "matches", "0")),
+				Long.parseLong(option(options, "timeout", "0")));
+		// Accelerate exact binary searches with the LCP array
+		boolean useLcp = Boolean.parseBoolean(option(options, "lcp", "false"));
+		// Index the reversed text too, for lower bounds in inexact backwards
+		// searches
+		boolean useReverse = Boolean.parseBoolean(option(options, "reverse", "false"));
+		// Metadata interval index: picked by how much the intervals overlap,
+		// a tree of node objects, a tree in flat arrays, or a tree in flat
+		// arrays over the metadata stored in columns
+		String intervals = option(options, "intervals", "auto");
+		// Also check a loaded index against the contents of the text file,
+		// not just its size and last modified time
+		boolean verify = Boolean.parseBoolean(option(options, "verify", "false"));
+		
+		// Large text mode: long positions and off-heap storage, for texts over
+		// 2^31 bytes
+		if(Boolean.parseBoolean(option(options, "large", "false"))) {
+			if(options.containsKey("index") || options.containsKey("metafile") || sampleRate > 0)
+				throw new IllegalArgumentException(
+						"large=true can't be used with index files or sampling");
+			
+			runLarge(pathToText, pathToMetas, pathToQueries,
+					Integer.parseInt(textRepeat), Integer.parseInt(metaRepeat));
+			return;
+		}
 		
-		// Load the sample file into a string
-		String text = 
-				new String(
-				Files.readAllBytes(Paths.get(pathToText)),
-				StandardCharsets.UTF_8) + Searches.EOT;
 		
-		// Construct the suffix array and other data structures
-		int[] sa = makeSuffixArray(text);
-		BackwardsSearchData bsd = makeBSD(text, sa);
+		// Prebuilt index file, created from the text if it doesn't exist yet
+		// or was built from another text
+		String pathToIndex = options.get("index");
+		if(pathToIndex != null &&
+		   (rankBackend != BackwardsSearchData.RankBackend.blocks || sampleRate > 0))
+			throw new IllegalArgumentException(
+					"Index files only support rank=blocks without sampling");
 		
-		// Load the metadata spec
-		Type metaListType =
-				new TypeToken<List<Metadata<Integer>>>() {}.getType();
-		List<Metadata<Integer>> metas = new Gson().fromJson(new FileReader(
-				pathToMetas), metaListType);
+		CharSequence text;
+		IntBuffer sa;
+		BackwardsSearchData bsd;
 		
-		// Load the queries
-		Type queryListType =
-				new TypeToken<List<QuerySpec>>() {}.getType();
-		List<QuerySpec> queries = new Gson().fromJson(new FileReader(
-				pathToQueries), queryListType);
+		IndexFile index = null;
+		if(pathToIndex != null && Files.exists(Paths.get(pathToIndex)))
+			index = loadIndex(Paths.get(pathToIndex), Paths.get(pathToText), utf8,
+					verify);
 		
+		if(index != null) {
+			text = index.text;
+			sa = index.sa;
+			bsd = index.bsd;
+		}
+		else {
+			int[] saArray;
+			
+			if(utf8) {
+				// Use the file's bytes as they are, plus the terminator
+				byte[] raw = Files.readAllBytes(Paths.get(pathToText));
+				byte[] bytes = Arrays.copyOf(raw, raw.length + 1);
+				bytes[raw.length] = (byte)Searches.EOT;
+				
+				saArray = makeSuffixArray(bytes, saThreads);
+				text = new Utf8Text(ByteBuffer.wrap(bytes));
+			}
+			else {
+				// Load the sample file into a string
+				String textString = 
+						new String(
+						Files.readAllBytes(Paths.get(pathToText)),
+						StandardCharsets.UTF_8) + Searches.EOT;
+				
+				saArray = makeSuffixArray(textString, saThreads);
+				text = textString;
+			}
+			
+			// Construct the other data structures
+			bsd = makeBSD(text, saArray, rankBackend, sampleRate);
+			
+			// The sampled suffix array replaces the full one
+			sa = sampleRate > 0 ? null : IntBuffer.wrap(saArray);
+			
+			if(pathToIndex != null)
+				IndexFile.write(Paths.get(pathToIndex), Paths.get(pathToText),
+						text, sa, bsd);
+		}
 		
-		// Process the metadatas into an interval tree, reporting timing
-		IntervalTree<Metadata<Integer>> metaTree = makeMetaTree(metas);
+		// The LCP array needs the full suffix array
+		LcpSearchData lcp = null;
+		if(useLcp) {
+			if(sa == null)
+				throw new IllegalArgumentException(
+						"lcp=true needs the full suffix array, it can't be used with sampling");
+			lcp = makeLcp(text, sa);
+		}
 		
-		// Run the queries on the data, reporting results
-		for(QuerySpec query: queries)
-			testQuery(text, sa, bsd, metaTree, query,
-					Integer.parseInt(textRepeat), Integer.parseInt(metaRepeat));
+		// Prebuilt metadata file, created from the metadata if it doesn't
+		// exist yet or was made from other metadata
+		String pathToMetafile = options.get("metafile");
+		
+		IntervalIndex<Metadata<Integer>> metaTree = null;
+		
+		if(pathToMetafile != null && Files.exists(Paths.get(pathToMetafile)))
+			metaTree = loadMetadataFile(Paths.get(pathToMetafile),
+					Paths.get(pathToMetas), text instanceof Utf8Text);
+		
+		if(metaTree == null) {
+			// Stream the metadata in, into columns for the columnar index and
+			// the metadata file, and into objects for the others
+			MetadataColumns columns = null;
+			List<Metadata<Integer>> metas = null;
+			try(Reader reader = new FileReader(pathToMetas)) {
+				if(intervals.equals("columns") || pathToMetafile != null)
+					columns = MetadataReader.readColumns(reader);
+				else
+					metas = MetadataReader.readList(reader);
+			}
+			
+			// Positions in a UTF-8 text are byte offsets, convert the metadata
+			// to match
+			if(text instanceof Utf8Text) {
+				if(columns != null)
+					toByteOffsets((Utf8Text)text, columns);
+				else
+					metas = toByteOffsets((Utf8Text)text, metas);
+			}
+			
+			if(pathToMetafile != null) {
+				MetadataFile.write(Paths.get(pathToMetafile), Paths.get(pathToMetas),
+						columns, text instanceof Utf8Text);
+				metaTree = loadMetadataFile(Paths.get(pathToMetafile),
+						Paths.get(pathToMetas), text instanceof Utf8Text);
+			}
+			else {
+				// Process the metadatas into an interval tree, reporting timing
+				metaTree = makeMetaTree(metas, columns, intervals);
+			}
+		}
+		
+		// The reversed text's index is built up front if asked for, otherwise
+		// when the first query needs it
+		BidirectionalSearchData bid = useReverse ?
+				makeBidirectional(text, bsd, rankBackend, saThreads) : null;
+		
+		
+		// Stream the queries in, running each on the data as it's read and
+		// reporting results
+		try(QueryReader queries = new QueryReader(new FileReader(pathToQueries))) {
+			QuerySpec query;
+			while((query = queries.next()) != null) {
+				if(bid == null && query.type == QueryType.bidirectional)
+					bid = makeBidirectional(text, bsd, rankBackend, saThreads);
+				
+				testQuery(text, sa, lcp, bsd, bid, searchPool, budget, metaTree, query,
+						Integer.parseInt(textRepeat), Integer.parseInt(metaRepeat));
+			}
+		}
 	}
 	
 
-	private static int[] makeSuffixArray(String text) {
+	/**
+	 * Index a text that may be over 2^31 bytes and run the queries on it. The
+	 * text is mapped from the file as UTF-8 bytes, the suffix array, BWT and
+	 * rank blocks are off-heap, and all positions are longs. Only exact
+	 * queries are run, all as backwards searches.
+	 */
+	private static void runLarge(String pathToText, String pathToMetas,
+			String pathToQueries, int textRepeat, int metaRepeat) throws IOException {
+		LargeText text = LargeText.map(Paths.get(pathToText));
+		
+		LargeSearchData data = makeLargeSearchData(text);
+		
+		LargeMetadataIndex metas = makeLargeMetaIndex(text, pathToMetas);
+		
+		try(QueryReader queries = new QueryReader(new FileReader(pathToQueries))) {
+			QuerySpec query;
+			while((query = queries.next()) != null)
+				testLargeQuery(data, metas, query, textRepeat, metaRepeat);
+		}
+	}
+	
+	/**
+	 * Collect the name=value options from the arguments starting at the given
+	 * index.
+	 */
+	private static Map<String, String> parseOptions(String[] args, int first) {
+		Map<String, String> options = new HashMap<>();
+		
+		for(int i = first; i < args.length; i++) {
+			int split = args[i].indexOf('=');
+			if(split < 0)
+				throw new IllegalArgumentException("Malformed option: " + args[i]);
+			
+			options.put(args[i].substring(0, split), args[i].substring(split + 1));
+		}
+		
+		return options;
+	}
+	
+	private static String option(Map<String, String> options, String name,
+			String defaultValue) {
+		String value = options.get(name);
+		return value == null ? defaultValue : value;
+	}
+	
+
+	/**
+	 * Construct the suffix array with sais, or in parallel if given a
+	 * positive number of threads.
+	 */
+	private static int[] makeSuffixArray(String text, int threads) {
 		System.out.println("Suffix array construction started.");
 		
 		// Encourage garbage collection before timing an operation
@@ -67,7 +271,32 @@ public class Main {
 		long start = System.currentTimeMillis();
 		
 		int[] sa = new int[text.length()];
-		sais.suffixsort(text, sa, text.length());
+		if(threads > 0)
+			ParallelSuffixSort.suffixsort(text, sa, text.length(), threads);
+		else
+			sais.suffixsort(text, sa, text.length());
+		
+		long stop = System.currentTimeMillis();
+		
+		System.out.printf("Suffix array construction done, took %dms\n", stop - start);
+		
+		return sa;
+	}
+	
+	private static int[] makeSuffixArray(byte[] text, int threads) {
+		System.out.println("Suffix array construction started.");
+		
+		// Encourage garbage collection before timing an operation
+		System.gc();
+		
+		long start = System.currentTimeMillis();
+		
+		int[] sa = new int[text.length];
+		if(threads > 0)
+			ParallelSuffixSort.suffixsort(new Utf8Text(ByteBuffer.wrap(text)),
+					sa, text.length, threads);
+		else
+			sais.suffixsort(text, sa, text.length);
 		
 		long stop = System.currentTimeMillis();
 		
@@ -76,15 +305,132 @@ public class Main {
 		return sa;
 	}
 	
-	private static BackwardsSearchData makeBSD(String text, int[] sa) {
+	private static LargeSearchData makeLargeSearchData(LargeText text) {
+		System.out.println("Suffix array construction started.");
+		
+		long start = System.currentTimeMillis();
+		
+		Packed40Array sa = LargeSuffixSort.suffixsort(text);
+		
+		long stop = System.currentTimeMillis();
+		
+		System.out.printf("Suffix array construction done, took %dms\n", stop - start);
+		
 		System.out.println("Auxiliary preprocessed data construction started.");
 		
+		start = System.currentTimeMillis();
+		
+		LargeSearchData data = new LargeSearchData(text, sa);
+		
+		stop = System.currentTimeMillis();
+		
+		System.out.printf("Auxiliary preprocessed data construction done, took %dms\n", stop - start);
+		
+		return data;
+	}
+	
+	private static LargeMetadataIndex makeLargeMetaIndex(LargeText text,
+			String pathToMetas) throws IOException {
+		System.out.println("Interval tree construction started.");
+		
 		// Encourage garbage collection before timing an operation
 		System.gc();
 		
 		long start = System.currentTimeMillis();
 		
-		BackwardsSearchData bsd = new BackwardsSearchData(text, sa);
+		LargeMetadataIndex metas;
+		try(Reader reader = new FileReader(pathToMetas)) {
+			metas = LargeMetadataIndex.read(reader, text);
+		}
+		
+		long stop = System.currentTimeMillis();
+		
+		System.out.printf("Interval tree construction done, took %dms\n", stop - start);
+		
+		return metas;
+	}
+	
+	/**
+	 * Load the index, or null if it is of another format version or wasn't
+	 * built from the text file with the given encoding. With verify, the text file's contents are checked too.
+	 */
+	private static IndexFile loadIndex(Path path, Path textPath, boolean utf8,
+			boolean verify) throws IOException {
+		System.out.println("Index loading started.");
+		
+		long start = System.currentTimeMillis();
+		
+		IndexFile index;
+		try {
+			index = IndexFile.load(path);
+		}
+		catch(IndexFile.FormatException e) {
+			System.out.printf("%s, rebuilding it\n", e.getMessage());
+			return null;
+		}
+		if(verify ? !index.verify(textPath) : !index.matches(textPath)) {
+			System.out.printf("Index %s was built from another text, rebuilding it\n", path);
+			return null;
+		}
+		if((index.text instanceof Utf8Text) != utf8) {
+			System.out.printf("Index %s has another encoding, rebuilding it\n", path);
+			return null;
+		}
+		
+		long stop = System.currentTimeMillis();
+		
+		System.out.printf("Index loading done, took %dms\n", stop - start);
+		
+		return index;
+	}
+	
+	/**
+	 * Load the metadata file, or null if it is of another format version or
+	 * wasn't made from the JSON file with the given offsets.
+	 */
+	private static MetadataFile loadMetadataFile(Path path, Path metasPath,
+			boolean byteOffsets) throws IOException {
+		System.out.println("Metadata file loading started.");
+		
+		long start = System.currentTimeMillis();
+		
+		MetadataFile metafile;
+		try {
+			metafile = MetadataFile.load(path);
+		}
+		catch(IndexFile.FormatException e) {
+			System.out.printf("%s, rebuilding it\n", e.getMessage());
+			return null;
+		}
+		if(!metafile.matches(metasPath)) {
+			System.out.printf("Metadata file %s was made from other metadata, rebuilding it\n",
+					path);
+			return null;
+		}
+		if(metafile.byteOffsets != byteOffsets) {
+			System.out.printf("Metadata file %s has another encoding, rebuilding it\n",
+					path);
+			return null;
+		}
+		
+		long stop = System.currentTimeMillis();
+		
+		System.out.printf("Metadata file loading done, took %dms\n", stop - start);
+		
+		return metafile;
+	}
+	
+	private static BackwardsSearchData makeBSD(CharSequence text, int[] sa,
+			BackwardsSearchData.RankBackend rankBackend, int sampleRate) {
+		System.out.println("Auxiliary preprocessed data construction started.");
+		
+		// Encourage garbage collection before timing an operation
+		System.gc();
+		
+		long start = System.currentTimeMillis();
+		
+		BackwardsSearchData bsd = new BackwardsSearchData(text, sa, rankBackend,
+				sampleRate);
 		
 		long stop = System.currentTimeMillis();
 		
@@ -93,8 +439,80 @@ public class Main {
 		return bsd;
 	}
 	
-	private static IntervalTree<Metadata<Integer>> makeMetaTree(
+	/**
+	 * Build the backwards search data of the reversed text and pair it with
+	 * that of the text.
+	 */
+	private static BidirectionalSearchData makeBidirectional(CharSequence text,
+			BackwardsSearchData bsd, BackwardsSearchData.RankBackend rankBackend,
+			int saThreads) {
+		String reversed = BidirectionalSearchData.reverse(text);
+		
+		int[] sa = makeSuffixArray(reversed, saThreads);
+		
+		return new BidirectionalSearchData(bsd,
+				makeBSD(reversed, sa, rankBackend, 0));
+	}
+	
+	private static LcpSearchData makeLcp(CharSequence text, IntBuffer sa) {
+		System.out.println("LCP array construction started.");
+		
+		// Encourage garbage collection before timing an operation
+		System.gc();
+		
+		long start = System.currentTimeMillis();
+		
+		LcpSearchData lcp = new LcpSearchData(text, sa);
+		
+		long stop = System.currentTimeMillis();
+		
+		System.out.printf("LCP array construction done, took %dms\n", stop - start);
+		
+		return lcp;
+	}
+	
+	/**
+	 * Convert the metadata ranges from char offsets to byte offsets into the
+	 * UTF-8 text.
+	 */
+	private static List<Metadata<Integer>> toByteOffsets(Utf8Text text,
 			List<Metadata<Integer>> metas) {
+		int[] offsets = new int[metas.size() * 2];
+		for(int i = 0; i < metas.size(); i++) {
+			offsets[2 * i] = metas.get(i).begin;
+			offsets[2 * i + 1] = metas.get(i).end;
+		}
+		
+		offsets = text.toByteOffsets(offsets);
+		
+		List<Metadata<Integer>> converted = new ArrayList<>(metas.size());
+		for(int i = 0; i < metas.size(); i++)
+			converted.add(new Metadata<Integer>(offsets[2 * i],
+					offsets[2 * i + 1], metas.get(i).value));
+		
+		return converted;
+	}
+	
+	/**
+	 * Convert the metadata columns from char offsets to byte offsets into the
+	 * UTF-8 text, in place.
+	 */
+	private static void toByteOffsets(Utf8Text text, MetadataColumns columns) {
+		int[] offsets = new int[columns.size() * 2];
+		for(int i = 0; i < columns.size(); i++) {
+			offsets[2 * i] = columns.begin(i);
+			offsets[2 * i + 1] = columns.end(i);
+		}
+		
+		offsets = text.toByteOffsets(offsets);
+		
+		for(int i = 0; i < columns.size(); i++)
+			columns.setRange(i, offsets[2 * i], offsets[2 * i + 1]);
+	}
+	
+	private static IntervalIndex<Metadata<Integer>> makeMetaTree(
+			List<Metadata<Integer>> metas, MetadataColumns columns,
+			String intervals) {
 		System.out.println("Interval tree construction started.");
 		
 		// Encourage garbage collection before timing an operation
@@ -102,11 +520,25 @@ public class Main {
 		
 		long start = System.currentTimeMillis();
 		
-		IntervalTree<Metadata<Integer>> metaTree = new IntervalTree<>(metas);
+		IntervalIndex<Metadata<Integer>> metaTree;
+		switch(intervals) {
+		case "tree":
+			metaTree = new IntervalTree<>(metas);
+			break;
+		case "flat":
+			metaTree = new FlatIntervalTree<>(metas);
+			break;
+		case "columns":
+			metaTree = new ColumnMetadataIndex(columns);
+			break;
+		default:
+			metaTree = DisjointIntervalIndex.create(metas);
+		}
 		
 		long stop = System.currentTimeMillis();
 		
-		System.out.printf("Interval tree construction done, took %dms\n", stop - start);
+		System.out.printf("Interval tree construction done, took %dms, using %s\n",
+				stop - start, metaTree.getClass().getSimpleName());
 		
 		return metaTree;
 	}
@@ -117,31 +549,48 @@ public class Main {
 	 * @param k 
 	 * @param textRepeat 
 	 */
-	private static void testQuery(String text, int[] sa,
-			BackwardsSearchData bsd, IntervalTree<Metadata<Integer>> metaTree,
+	private static void testQuery(CharSequence text, IntBuffer sa,
+			LcpSearchData lcp, BackwardsSearchData bsd, BidirectionalSearchData bid,
+			ForkJoinPool pool, SearchBudget budget,
+			IntervalIndex<Metadata<Integer>> metaTree,
 			QuerySpec query, final int textRepeat, final int metaRepeat) {
 		System.out.println("Testing query " + query);
 		
+		if(sa == null && query.type == QueryType.binary
+		   && !(query.isInexact && query.mismatchesOnly)) {
+			System.out.println("Skipped, binary search needs the full suffix array.");
+			return;
+		}
+		
+		// Encode the pattern to match the text, once per query
+		String pattern = text instanceof Utf8Text ?
+				Utf8Text.encode(query.query) : query.query;
+		
 		// Run a few thousand repetitions first to hopefully get JIT done
 		/*
 		for(int i = 0; i < PREPARATION_REPEATS; i++)
-			searchMetadata(sa, metaTree, searchText(text, sa, bsd, metaTree, query));
+			searchMetadata(sa, bsd, metaTree, searchText(text, sa, lcp, bsd, bid, pool, budget, metaTree, query, pattern));
 		*/
 		// Encourage GC so it will interfere with the actual test less
 		System.gc();
 		
-		// Timing test - text search
+		// Timing test - text search. Searches that don't use the budget
+		// leave it reset.
 		List<? extends Match> textMatches = null;
+		budget.start();
 		long start = System.currentTimeMillis();
 		
 		for(int i = 0; i < textRepeat; i++)
-			textMatches = searchText(text, sa, bsd, metaTree, query);
+			textMatches = searchText(text, sa, lcp, bsd, bid, pool, budget, metaTree, query, pattern);
 		
 		long stop = System.currentTimeMillis();
 		
 		long time = stop - start;
 		System.out.printf("Text search testing complete %.2fms per query, %dms total, %d matches.\n",
 				time * 1.0 / textRepeat, time, countMatches(textMatches));
+		if(budget.isExhausted())
+			System.out.printf("Search budget ran out after %d states, the matches are partial.\n",
+					budget.nodes());
 		
 		// Timing test - metadata search
 		System.gc();
@@ -150,7 +599,7 @@ public class Main {
 		start = System.currentTimeMillis();
 		
 		for(int i = 0; i < metaRepeat; i++)
-			results = searchMetadata(sa, metaTree, textMatches);
+			results = searchMetadata(sa, bsd, metaTree, textMatches);
 		
 		stop = System.currentTimeMillis();
 		
@@ -164,8 +613,8 @@ public class Main {
 		System.out.println("Matches: ");
 		for(QueryResult result: results) {
 			for(int i = result.match.begin; i < result.match.end; i++) {
-				System.out.printf(" '%s'\n", text.substring(sa[i],
-						Math.min(sa[i] + result.match.length, text.length())));
+				System.out.printf(" '%s'\n", text.subSequence(sa.get(i),
+						Math.min(sa.get(i) + result.match.length, text.length())));
 			}
 			System.out.println(result.metas);
 			System.out.println();
@@ -174,6 +623,78 @@ public class Main {
 	}
 	
 	
+	/**
+	 * Run timing test on the given query over a large text.
+	 */
+	private static void testLargeQuery(LargeSearchData data,
+			LargeMetadataIndex metas, QuerySpec query, int textRepeat,
+			int metaRepeat) {
+		System.out.println("Testing query " + query);
+		
+		if(query.isInexact) {
+			System.out.println("Skipped, large texts only support exact searches.");
+			return;
+		}
+		
+		String pattern = Utf8Text.encode(query.query);
+		
+		System.gc();
+		
+		LargeMatch match = null;
+		long start = System.currentTimeMillis();
+		
+		for(int i = 0; i < textRepeat; i++)
+			match = Searches.backwardsSearch(data, pattern);
+		
+		long stop = System.currentTimeMillis();
+		
+		long time = stop - start;
+		System.out.printf("Text search testing complete %.2fms per query, %dms total, %d matches.\n",
+				time * 1.0 / textRepeat, time, match == null ? 0 : match.end - match.begin);
+		
+		if(match == null)
+			return;
+		
+		// Timing test - metadata search, for each hit
+		System.gc();
+		
+		final List<List<Integer>> results = new ArrayList<>();
+		start = System.currentTimeMillis();
+		
+		for(int i = 0; i < metaRepeat; i++)
+			searchLargeMetadata(data, metas, match, results);
+		
+		stop = System.currentTimeMillis();
+		
+		time = stop - start;
+		System.out.printf("Metadata search testing complete %.2fms per query, %dms total.\n",
+				time * 1.0 / (metaRepeat * results.size()), time);
+	}
+	
+	/**
+	 * Find the metadata rows overlapping each text hit of the match, into
+	 * the results list.
+	 */
+	private static void searchLargeMetadata(LargeSearchData data,
+			LargeMetadataIndex metas, LargeMatch match,
+			final List<List<Integer>> results) {
+		results.clear();
+		
+		ColumnIntervalTree.RowVisitor visitor = new ColumnIntervalTree.RowVisitor() {
+			@Override
+			public void visit(int row) {
+				results.get(results.size() - 1).add(row);
+			}
+		};
+		
+		for (long i = match.begin; i < match.end; i++) {
+			long position = data.locate(i);
+			
+			results.add(new ArrayList<Integer>());
+			metas.find(position, position + match.length, visitor);
+		}
+	}
+	
 	private static int countMatches(List<? extends Match> matches) {
 		int count = 0;
 		for(Match match: matches)
@@ -183,46 +704,125 @@ public class Main {
 
 
 	/**
-	 * Call the appropriate Searches method for the given query.
+	 * Call the appropriate Searches method for the given query, with the
+	 * query's pattern already encoded to match the text. Exact binary searches
+	 * use the LCP data if it was built, and inexact backwards searches the
+	 * thread pool if given. Inexact binary and backwards searches, sequential
+	 * or split over the pool, are limited by the budget.
 	 * @return 
 	 */
-	private static List<? extends Match> searchText(String text, int[] sa,
-			BackwardsSearchData bsd, IntervalTree<Metadata<Integer>> metaTree,
-			QuerySpec query) {
+	private static List<? extends Match> searchText(CharSequence text,
+			IntBuffer sa, LcpSearchData lcp, BackwardsSearchData bsd,
+			BidirectionalSearchData bid, ForkJoinPool pool, SearchBudget budget,
+			IntervalIndex<Metadata<Integer>> metaTree,
+			QuerySpec query, String pattern) {
 		List<? extends Match> matches = null;
 		
+		// Replacements only are always searched backwards, whatever the type
+		if(query.isInexact && query.mismatchesOnly)
+			return Searches.hammingBackwardsSearch(text, sa, bsd,
+					query.threshold, pattern);
+		
 		// Find suffix array hit range
 		switch(query.type) {
 		case backwards:
-			if(query.isInexact)
+			if(query.isInexact && query.top > 0 && bid != null)
+				matches = Searches.topBackwardsSearch(text, sa, bid,
+						query.threshold, query.top, pattern);
+			else if(query.isInexact && query.top > 0)
+				matches = Searches.topBackwardsSearch(text, sa, bsd,
+						query.threshold, query.top, pattern);
+			else if(query.isInexact && pool != null && bid != null)
+				matches = ParallelSearches.inexactBackwardsSearch(text, sa, bid,
+						query.threshold, pattern, pool, budget);
+			else if(query.isInexact && pool != null)
+				matches = ParallelSearches.inexactBackwardsSearch(text, sa, bsd,
+						query.threshold, pattern, pool, budget);
+			else if(query.isInexact && bid != null)
+				matches = Searches.inexactBackwardsSearch(text, sa, bid,
+						query.threshold, pattern, budget);
+			else if(query.isInexact)
 				matches = Searches.inexactBackwardsSearch(text, sa, bsd,
-						query.threshold, query.query);
+						query.threshold, pattern, budget);
 			else
-				matches = Collections.singletonList(Searches.backwardsSearch(text, sa, bsd, query.query));
+				matches = Collections.singletonList(Searches.backwardsSearch(text, sa, bsd, pattern));
 			break;
 			
 		case binary:
 			if(query.isInexact)
 				matches = Searches.inexactBinarySearch(text, sa, bsd,
-						query.threshold, query.query);
+						query.threshold, pattern, budget);
+			else if(lcp != null)
+				matches = Collections.singletonList(Searches.binarySearch(text, sa, lcp, pattern));
+			else
+				matches = Collections.singletonList(Searches.binarySearch(text, sa, pattern));
+			break;
+			
+		case dp:
+			if(query.isInexact && bid != null)
+				matches = Searches.dpBackwardsSearch(text, sa, bid,
+						query.threshold, pattern);
+			else if(query.isInexact)
+				matches = Searches.dpBackwardsSearch(text, sa, bsd,
+						query.threshold, pattern);
+			else
+				matches = Collections.singletonList(Searches.backwardsSearch(text, sa, bsd, pattern));
+			break;
+			
+		case bidirectional:
+			if(query.isInexact)
+				matches = Searches.bidirectionalSearch(text, sa, bid,
+						query.threshold, pattern);
+			else
+				matches = Collections.singletonList(Searches.backwardsSearch(text, sa, bsd, pattern));
+			break;
+			
+		case seed:
+			if(query.isInexact)
+				matches = Searches.seedSearch(text, sa, bsd, query.threshold,
+						pattern);
 			else
-				matches = Collections.singletonList(Searches.binarySearch(text, sa, query.query));
+				matches = Collections.singletonList(Searches.backwardsSearch(text, sa, bsd, pattern));
 			break;
 		}
 		
 		return matches;
 	}
 	
-	private static List<QueryResult> searchMetadata(int[] sa,
-			IntervalTree<Metadata<Integer>> metaTree,
+	/**
+	 * Search the metadata for each text hit. The text positions of the hits
+	 * come from the suffix array, or if it has been dropped in favour of the
+	 * sampled one, by locating them through the backwards search data.
+	 */
+	private static List<QueryResult> searchMetadata(IntBuffer sa,
+			BackwardsSearchData bsd, IntervalIndex<Metadata<Integer>> metaTree,
 			List<? extends Match> matches) {
-		// Find metadatas for each of the actual text hits
+		// Find metadatas for each of the actual text hits, joining all of a
+		// match's hits with the metadata in one sweep
 		List<QueryResult> results = new ArrayList<>(matches.size());
+		int[] positions = new int[16];
 		for (Match match : matches) {
-			for (int i = match.begin; i < match.end; i++) {
-				results.add(new QueryResult(match, metaTree.find(new Range(
-						sa[i], sa[i] + match.length))));
-			}
+			int count = match.end - match.begin;
+			if (positions.length < count)
+				positions = new int[count];
+			
+			for (int i = match.begin; i < match.end; i++)
+				positions[i - match.begin] = sa != null ? sa.get(i) : bsd.locate(i);
+			
+			final List<List<Metadata<Integer>>> metas = new ArrayList<>(count);
+			for (int i = 0; i < count; i++)
+				metas.add(new ArrayList<Metadata<Integer>>());
+			
+			metaTree.find(positions, count, match.length,
+					new OccurrenceVisitor<Metadata<Integer>>() {
+				@Override
+				public void visit(int occurrence, Metadata<Integer> meta) {
+					metas.get(occurrence).add(meta);
+				}
+			});
+			
+			for (List<Metadata<Integer>> found : metas)
+				results.add(new QueryResult(match, found));
 		}
 
 		return results;
@@ -244,27 +844,105 @@ public class Main {
 	
 	// Query test specification stuff
 	
-	public enum QueryType { binary, backwards };
+	public enum QueryType { binary, backwards, bidirectional, dp, seed };
 	
 	public static class QuerySpec {
 		final String query;
 		final QueryType type;
 		final boolean isInexact;
 		final int threshold;
+		/** Inexact matches may only replace characters. */
+		final boolean mismatchesOnly;
+		/** Only the best this many inexact backwards matches, or 0 for all. */
+		final int top;
 		
 		public QuerySpec(String query, QueryType type, boolean isInexact,
-				int threshold) {
+				int threshold, boolean mismatchesOnly, int top) {
 			this.query = query;
 			this.type = type;
 			this.isInexact = isInexact;
 			this.threshold = threshold;
+			this.mismatchesOnly = mismatchesOnly;
+			this.top = top;
 		}
 
 		@Override
 		public String toString() {
 			return "QuerySpec [query=" + query + ", type=" + type
 					+ ", isInexact=" + isInexact + ", threshold=" + threshold
-					+ "]";
+					+ ", mismatchesOnly=" + mismatchesOnly + ", top=" + top + "]";
+		}
+	}
+	
+	/**
+	 * Reads the query file, a JSON array of query specifications, one query
+	 * at a time.
+	 */
+	private static class QueryReader implements Closeable {
+		private final JsonReader json;
+		
+		private boolean done;
+		
+		public QueryReader(Reader reader) throws IOException {
+			this.json = new JsonReader(reader);
+			this.json.beginArray();
+		}
+		
+		/**
+		 * Read the next query.
+		 * @return null if there are no more.
+		 */
+		public QuerySpec next() throws IOException {
+			if(this.done)
+				return null;
+			
+			if(!this.json.hasNext()) {
+				this.json.endArray();
+				this.done = true;
+				return null;
+			}
+			
+			String query = null;
+			QueryType type = null;
+			boolean isInexact = false;
+			int threshold = 0;
+			boolean mismatchesOnly = false;
+			int top = 0;
+			
+			this.json.beginObject();
+			while(this.json.hasNext()) {
+				switch(this.json.nextName()) {
+				case "query":
+					query = this.json.nextString();
+					break;
+				case "type":
+					type = QueryType.valueOf(this.json.nextString());
+					break;
+				case "isInexact":
+					isInexact = this.json.nextBoolean();
+					break;
+				case "threshold":
+					threshold = this.json.nextInt();
+					break;
+				case "mismatchesOnly":
+					mismatchesOnly = this.json.nextBoolean();
+					break;
+				case "top":
+					top = this.json.nextInt();
+					break;
+				default:
+					this.json.skipValue();
+				}
+			}
+			this.json.endObject();
+			
+			return new QuerySpec(query, type, isInexact, threshold,
+					mismatchesOnly, top);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			this.json.close();
 		}
 	}
 }
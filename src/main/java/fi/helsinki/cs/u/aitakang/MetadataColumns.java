@@ -0,0 +1,129 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Metadata stored as columns of ints, one row per interval, instead of a
+ * Metadata object with a boxed value each. Values that aren't ints can be
+ * kept in an optional side table of payloads by row, which is only allocated
+ * once the first payload is set.
+ */
+public class MetadataColumns {
+
+	private int[] begins = new int[16];
+	private int[] ends = new int[16];
+	private int[] values = new int[16];
+
+	/** Payloads by row, null until one is set. */
+	private Object[] payloads;
+
+	private int size;
+
+
+	/**
+	 * Copy the metadata into columns, in the same order.
+	 */
+	public static MetadataColumns of(List<Metadata<Integer>> metas) {
+		MetadataColumns columns = new MetadataColumns();
+
+		for(Metadata<Integer> meta: metas)
+			columns.add(meta.begin, meta.end, meta.value);
+
+		return columns;
+	}
+
+	/**
+	 * Append a row.
+	 * @return The row.
+	 */
+	public int add(int begin, int end, int value) {
+		assert begin < end;
+
+		if(this.size == this.begins.length) {
+			this.begins = Arrays.copyOf(this.begins, 2 * this.size);
+			this.ends = Arrays.copyOf(this.ends, 2 * this.size);
+			this.values = Arrays.copyOf(this.values, 2 * this.size);
+		}
+
+		this.begins[this.size] = begin;
+		this.ends[this.size] = end;
+		this.values[this.size] = value;
+
+		return this.size++;
+	}
+
+	/**
+	 * Move a row's interval, such as when converting offsets. Trees built
+	 * earlier still have the old interval.
+	 */
+	public void setRange(int row, int begin, int end) {
+		assert begin < end;
+
+		this.begins[row] = begin;
+		this.ends[row] = end;
+	}
+
+	public void setPayload(int row, Object payload) {
+		if(this.payloads == null)
+			this.payloads = new Object[this.begins.length];
+		else if(this.payloads.length < this.begins.length)
+			this.payloads = Arrays.copyOf(this.payloads, this.begins.length);
+
+		this.payloads[row] = payload;
+	}
+
+	/**
+	 * Drop the spare capacity left by growing the columns.
+	 */
+	public void trim() {
+		this.begins = Arrays.copyOf(this.begins, this.size);
+		this.ends = Arrays.copyOf(this.ends, this.size);
+		this.values = Arrays.copyOf(this.values, this.size);
+		if(this.payloads != null)
+			this.payloads = Arrays.copyOf(this.payloads, this.size);
+	}
+
+	/**
+	 * Build an interval tree over the rows. Rows added later aren't in it.
+	 */
+	public ColumnIntervalTree index() {
+		return new ColumnIntervalTree(this.begins, this.ends, this.size);
+	}
+
+	public boolean hasPayloads() {
+		return this.payloads != null;
+	}
+
+	public int size() {
+		return this.size;
+	}
+
+	public int begin(int row) {
+		return this.begins[row];
+	}
+
+	public int end(int row) {
+		return this.ends[row];
+	}
+
+	public int value(int row) {
+		return this.values[row];
+	}
+
+	/**
+	 * The row's payload, or null if it has none.
+	 */
+	public Object payload(int row) {
+		return this.payloads != null && row < this.payloads.length ?
+				this.payloads[row] : null;
+	}
+
+	/**
+	 * The row as a Metadata object, for code that wants one.
+	 */
+	public Metadata<Integer> get(int row) {
+		return new Metadata<Integer>(this.begins[row], this.ends[row],
+				this.values[row]);
+	}
+}
@@ -0,0 +1,339 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Metadata and its interval tree stored on disk. Loading memory-maps the
+ * file, the searches run directly on the mapped tree, and a row's interval
+ * and value are only decoded when it is returned as a result.
+ *
+ * The file is little-endian and laid out as:
+ *
+ *  - header: magic, format version, row count, tree node count, whether the
+ *    offsets are UTF-8 byte offsets, rows per block, row data length, size
+ *    and last modified time of the JSON file the metadata was read from
+ *  - the ColumnIntervalTree's buffers, as ints
+ *  - the offset of each block of rows in the row data
+ *  - row data
+ *
+ * The rows are stored as varints: the begin, as a zigzag encoded difference
+ * to the previous row's, the length, and the value, as a zigzag encoded
+ * difference to the previous row's. Each block starts from zero, so a row
+ * is decoded from the start of its block. The tree's buffers are searched
+ * where they are, so they are kept at a fixed width.
+ *
+ * Each section starts at a multiple of 8 bytes. The sections are mapped
+ * separately, so each must be under 2GB. Payloads aren't stored.
+ *
+ * As with an IndexFile, the JSON file's size and time let a loaded file be
+ * checked against the metadata it is meant for, see matches(Path).
+ */
+public class MetadataFile implements IntervalIndex<Metadata<Integer>> {
+
+	public static final int MAGIC = 0x444d5053; // "SPMD"
+	public static final int VERSION = 4;
+
+	private static final int HEADER_SIZE = 7 * 4 + 2 * 8;
+
+	/** Rows per block of row data. */
+	private static final int BLOCK_ROWS = 64;
+
+	/** Number of rows. */
+	public final int size;
+
+	/** The offsets are byte offsets into a UTF-8 text, not char offsets. */
+	public final boolean byteOffsets;
+
+	/** The interval tree over the mapped buffers. */
+	public final ColumnIntervalTree tree;
+
+	/** Size of the JSON file the metadata was read from. */
+	public final long sourceSize;
+
+	/** Last modified time of the JSON file, in milliseconds. */
+	public final long sourceModified;
+
+	/** Start of each block in the row data. */
+	private final IntBuffer blocks;
+
+	private final ByteBuffer rows;
+
+	/** Decodes the rows found, one per thread. */
+	private final ThreadLocal<RowAdapter<Metadata<Integer>>> adapters =
+			new ThreadLocal<RowAdapter<Metadata<Integer>>>() {
+		@Override
+		protected RowAdapter<Metadata<Integer>> initialValue() {
+			return new RowAdapter<Metadata<Integer>>() {
+				@Override
+				protected Metadata<Integer> interval(int row) {
+					return MetadataFile.this.get(row);
+				}
+			};
+		}
+	};
+
+
+	protected MetadataFile(int size, boolean byteOffsets, ColumnIntervalTree tree,
+			long sourceSize, long sourceModified, IntBuffer blocks, ByteBuffer rows) {
+		this.size = size;
+		this.byteOffsets = byteOffsets;
+		this.tree = tree;
+		this.sourceSize = sourceSize;
+		this.sourceModified = sourceModified;
+		this.blocks = blocks;
+		this.rows = rows;
+	}
+
+	/**
+	 * Convert a JSON metadata file to a metadata file with char offsets:
+	 * MetadataFile metadata.json output
+	 */
+	public static void main(String[] args) throws IOException {
+		MetadataColumns columns;
+		try(Reader reader = new FileReader(args[0])) {
+			columns = MetadataReader.readColumns(reader);
+		}
+
+		write(Paths.get(args[1]), Paths.get(args[0]), columns, false);
+	}
+
+	/**
+	 * Write the metadata, read from the source file, and its interval tree to
+	 * the given file.
+	 */
+	public static void write(Path path, Path source, MetadataColumns columns,
+			boolean byteOffsets) throws IOException {
+		if(columns.hasPayloads())
+			throw new IllegalArgumentException(
+					"Only metadata with int values can be stored");
+
+		int n = columns.size();
+		IntBuffer[] sections = columns.index().sections();
+
+		// Encode the rows first, for the block offsets and data length
+		ByteBuffer data = ByteBuffer.allocate(16);
+		int[] blocks = new int[(n + BLOCK_ROWS - 1) / BLOCK_ROWS];
+		int begin = 0;
+		int value = 0;
+		for(int row = 0; row < n; row++) {
+			if(row % BLOCK_ROWS == 0) {
+				blocks[row / BLOCK_ROWS] = data.position();
+				begin = 0;
+				value = 0;
+			}
+
+			if(data.remaining() < 15) {
+				ByteBuffer grown = ByteBuffer.allocate(2 * data.capacity());
+				data.flip();
+				data = grown.put(data);
+			}
+
+			putVarint(data, zigzag(columns.begin(row) - begin));
+			putVarint(data, columns.end(row) - columns.begin(row));
+			putVarint(data, zigzag(columns.value(row) - value));
+
+			begin = columns.begin(row);
+			value = columns.value(row);
+		}
+
+		try(FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+			buf.putInt(MAGIC);
+			buf.putInt(VERSION);
+			buf.putInt(n);
+			buf.putInt(sections[0].limit());
+			buf.putInt(byteOffsets ? 1 : 0);
+			buf.putInt(BLOCK_ROWS);
+			buf.putInt(data.position());
+			buf.putLong(Files.size(source));
+			buf.putLong(Files.getLastModifiedTime(source).toMillis());
+			IndexFile.pad(buf, out);
+
+			for(IntBuffer section: sections) {
+				for(int i = 0; i < section.limit(); i++)
+					IndexFile.putInt(buf, out, section.get(i));
+				IndexFile.pad(buf, out);
+			}
+
+			for(int block: blocks)
+				IndexFile.putInt(buf, out, block);
+			IndexFile.pad(buf, out);
+
+			for(int i = 0; i < data.position(); i++)
+				IndexFile.put(buf, out, data.get(i), 1);
+			IndexFile.pad(buf, out);
+
+			IndexFile.flush(buf, out);
+		}
+	}
+
+	/**
+	 * Memory-map the metadata stored in the given file.
+	 *
+	 * @throws IndexFile.FormatException if the file isn't a metadata file of
+	 * this version
+	 */
+	public static MetadataFile load(Path path) throws IOException {
+		try(FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			if(in.size() < HEADER_SIZE)
+				throw new IndexFile.FormatException(path + " is not a metadata file");
+			ByteBuffer header = IndexFile.map(in, 0, HEADER_SIZE);
+			if(header.getInt() != MAGIC)
+				throw new IndexFile.FormatException(path + " is not a metadata file");
+
+			int version = header.getInt();
+			if(version != VERSION)
+				throw new IndexFile.FormatException(path
+						+ " has metadata format version " + version + ", expected "
+						+ VERSION);
+
+			int n = header.getInt();
+			int nodes = header.getInt();
+			boolean byteOffsets = header.getInt() != 0;
+			int blockRows = header.getInt();
+			if(blockRows != BLOCK_ROWS)
+				throw new IndexFile.FormatException(path + " has " + blockRows
+						+ " rows per block, expected " + BLOCK_ROWS);
+			int dataLength = header.getInt();
+			long sourceSize = header.getLong();
+			long sourceModified = header.getLong();
+
+			long pos = IndexFile.align(HEADER_SIZE);
+
+			// Lengths of the tree's buffers, in the order of sections()
+			int[] lengths = new int[] { nodes, nodes, nodes, nodes + 1, n, n, n,
+					n, n, n, 2 * n, 2 * n, 2 * n };
+			IntBuffer[] sections = new IntBuffer[ColumnIntervalTree.SECTIONS];
+			for(int i = 0; i < sections.length; i++) {
+				sections[i] = IndexFile.map(in, pos, 4L * lengths[i]).asIntBuffer();
+				pos = IndexFile.align(pos + 4L * lengths[i]);
+			}
+
+			int blockCount = (n + BLOCK_ROWS - 1) / BLOCK_ROWS;
+			IntBuffer blocks = IndexFile.map(in, pos, 4L * blockCount).asIntBuffer();
+			pos = IndexFile.align(pos + 4L * blockCount);
+
+			ByteBuffer rows = IndexFile.map(in, pos, dataLength);
+
+			return new MetadataFile(n, byteOffsets, new ColumnIntervalTree(sections),
+					sourceSize, sourceModified, blocks, rows);
+		}
+	}
+
+	/**
+	 * Whether the metadata was read from the given JSON file, by its size and
+	 * last modified time. The file isn't read.
+	 */
+	public boolean matches(Path source) throws IOException {
+		return Files.size(source) == this.sourceSize
+				&& Files.getLastModifiedTime(source).toMillis() == this.sourceModified;
+	}
+
+	/**
+	 * Decode the row.
+	 */
+	public Metadata<Integer> get(int row) {
+		int pos = this.blocks.get(row / BLOCK_ROWS);
+		int begin = 0;
+		int length = 0;
+		int value = 0;
+
+		for(int i = row - row % BLOCK_ROWS; i <= row; i++) {
+			for(int field = 0; field < 3; field++) {
+				int varint = 0;
+				for(int shift = 0; ; shift += 7) {
+					byte b = this.rows.get(pos++);
+					varint |= (b & 0x7f) << shift;
+					if(b >= 0)
+						break;
+				}
+
+				if(field == 0)
+					begin += unzigzag(varint);
+				else if(field == 1)
+					length = varint;
+				else
+					value += unzigzag(varint);
+			}
+		}
+
+		return new Metadata<Integer>(begin, begin + length, value);
+	}
+
+	@Override
+	public List<Metadata<Integer>> find(Range range) {
+		final List<Metadata<Integer>> results = new ArrayList<>();
+
+		find(range, new IntervalVisitor<Metadata<Integer>>() {
+			@Override
+			public void visit(Metadata<Integer> interval) {
+				results.add(interval);
+			}
+		});
+
+		return results;
+	}
+
+	@Override
+	public List<Metadata<Integer>> find(int point) {
+		final List<Metadata<Integer>> results = new ArrayList<>();
+
+		find(point, new IntervalVisitor<Metadata<Integer>>() {
+			@Override
+			public void visit(Metadata<Integer> interval) {
+				results.add(interval);
+			}
+		});
+
+		return results;
+	}
+
+	@Override
+	public void find(Range range,
+			IntervalVisitor<? super Metadata<Integer>> visitor) {
+		this.adapters.get().find(this.tree, range.begin, range.end, visitor);
+	}
+
+	@Override
+	public void find(int point,
+			IntervalVisitor<? super Metadata<Integer>> visitor) {
+		this.adapters.get().find(this.tree, point, visitor);
+	}
+
+	@Override
+	public void find(int[] positions, int count, int length,
+			OccurrenceVisitor<? super Metadata<Integer>> visitor) {
+		this.adapters.get().find(this.tree, positions, count, length, visitor);
+	}
+
+
+	private static void putVarint(ByteBuffer data, int value) {
+		while((value & ~0x7f) != 0) {
+			data.put((byte)((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		data.put((byte)value);
+	}
+
+	private static int zigzag(int value) {
+		return (value << 1) ^ (value >> 31);
+	}
+
+	private static int unzigzag(int value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
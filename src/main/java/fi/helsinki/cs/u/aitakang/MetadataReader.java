@@ -0,0 +1,185 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Reads a metadata file, a JSON array of objects with begin, end and value
+ * fields, one interval at a time, instead of building the whole list of
+ * objects by reflection first. Values that aren't ints are read into payload
+ * objects. The offsets are read as longs, for the metadata of a LargeText.
+ */
+public class MetadataReader implements Closeable {
+
+	private final JsonReader json;
+
+	/** For reading payloads. */
+	private final Gson gson = new Gson();
+
+	private boolean done;
+
+	/** Number of intervals read. */
+	private int count;
+
+	/** Marks a begin or end that wasn't given. */
+	private static final long MISSING = Long.MIN_VALUE;
+
+	// Fields of the interval last read
+
+	private long begin;
+	private long end;
+	private int value;
+	private Object payload;
+
+
+	public MetadataReader(Reader reader) throws IOException {
+		this.json = new JsonReader(reader);
+		this.json.beginArray();
+	}
+
+	/**
+	 * Read all the metadata into a list.
+	 */
+	public static List<Metadata<Integer>> readList(Reader reader)
+			throws IOException {
+		List<Metadata<Integer>> metas = new ArrayList<>();
+
+		try(MetadataReader metadata = new MetadataReader(reader)) {
+			while(metadata.next()) {
+				if(metadata.payload() != null)
+					throw new JsonSyntaxException("Metadata value is not an int: "
+							+ metadata.payload());
+
+				metas.add(new Metadata<Integer>(metadata.begin(), metadata.end(),
+						metadata.value()));
+			}
+		}
+
+		return metas;
+	}
+
+	/**
+	 * Read all the metadata into columns, with the values that aren't ints
+	 * as payloads.
+	 */
+	public static MetadataColumns readColumns(Reader reader) throws IOException {
+		MetadataColumns columns = new MetadataColumns();
+
+		try(MetadataReader metadata = new MetadataReader(reader)) {
+			while(metadata.next()) {
+				int row = columns.add(metadata.begin(), metadata.end(),
+						metadata.value());
+				if(metadata.payload() != null)
+					columns.setPayload(row, metadata.payload());
+			}
+		}
+
+		columns.trim();
+
+		return columns;
+	}
+
+	/**
+	 * Read the next interval.
+	 * @return false if there are no more.
+	 * @throws IOException If the interval has no begin or end, or is empty.
+	 */
+	public boolean next() throws IOException {
+		if(this.done)
+			return false;
+
+		if(!this.json.hasNext()) {
+			this.json.endArray();
+			this.done = true;
+			return false;
+		}
+
+		this.begin = MISSING;
+		this.end = MISSING;
+		this.value = 0;
+		this.payload = null;
+
+		this.json.beginObject();
+		while(this.json.hasNext()) {
+			switch(this.json.nextName()) {
+			case "begin":
+				this.begin = this.json.nextLong();
+				break;
+			case "end":
+				this.end = this.json.nextLong();
+				break;
+			case "value":
+				if(this.json.peek() == JsonToken.NUMBER)
+					this.value = this.json.nextInt();
+				else
+					this.payload = this.gson.fromJson(this.json, Object.class);
+				break;
+			default:
+				this.json.skipValue();
+			}
+		}
+		this.json.endObject();
+
+		if(this.begin == MISSING || this.end == MISSING)
+			throw new IOException("Metadata interval " + this.count + " has no "
+					+ (this.begin == MISSING ? "begin" : "end"));
+		if(this.end <= this.begin)
+			throw new IOException("Metadata interval " + this.count + " ["
+					+ this.begin + ", " + this.end + ") does not end after its begin");
+		this.count++;
+
+		return true;
+	}
+
+	public int begin() {
+		return toInt(this.begin);
+	}
+
+	public int end() {
+		return toInt(this.end);
+	}
+
+	public long longBegin() {
+		return this.begin;
+	}
+
+	public long longEnd() {
+		return this.end;
+	}
+
+	/**
+	 * The value, or 0 if it isn't an int.
+	 */
+	public int value() {
+		return this.value;
+	}
+
+	/**
+	 * The value if it isn't an int, otherwise null.
+	 */
+	public Object payload() {
+		return this.payload;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.json.close();
+	}
+
+
+	private static int toInt(long offset) {
+		if(offset != (int)offset)
+			throw new JsonSyntaxException("Metadata offset does not fit in an int: "
+					+ offset);
+
+		return (int)offset;
+	}
+}
@@ -0,0 +1,121 @@
+package fi.helsinki.cs.u.aitakang;
+
+/**
+ * Myers' bit-parallel approximate matching. Scanning a text, it keeps the
+ * column of the edit distance table between the pattern and the substrings
+ * ending at the current text position as bit vectors of the differences
+ * between vertically adjacent cells, and advances it by one text character
+ * in O(m / 64) word operations.
+ *
+ * Patterns longer than 64 characters are split over several words, with the
+ * horizontal difference at the bottom of each word carried into the next, as
+ * in Myers' block-based version.
+ */
+public class MyersMatcher {
+
+	private final BackwardsSearchData bsd;
+
+	/** Pattern length. */
+	private final int m;
+
+	/** Words per column. */
+	private final int words;
+
+	/** Bit of the pattern's last character in the last word. */
+	private final long last;
+
+	/** For each symbol, the positions where the pattern has it. */
+	private final long[][] peq;
+
+	/** Positive and negative vertical differences of the column. */
+	private final long[] pv;
+	private final long[] mv;
+
+
+	/**
+	 * Prepare to match the pattern against text over the alphabet of the
+	 * given backwards search data.
+	 */
+	public MyersMatcher(BackwardsSearchData bsd, String pattern) {
+		this.bsd = bsd;
+		this.m = pattern.length();
+		this.words = Math.max(1, (this.m + 63) / 64);
+		this.last = 1L << ((this.m - 1) & 63);
+
+		this.peq = new long[bsd.sigma()][this.words];
+		for(int i = 0; i < this.m; i++) {
+			int c = bsd.symbol(pattern.charAt(i));
+			if(c >= 0)
+				this.peq[c][i / 64] |= 1L << (i & 63);
+		}
+
+		this.pv = new long[this.words];
+		this.mv = new long[this.words];
+	}
+
+	/**
+	 * The least edit distance between the pattern and any substring of
+	 * text[from, to). Positions wrap around the text, as backwards search
+	 * reads it cyclically.
+	 */
+	public int minDistance(CharSequence text, int from, int to) {
+		int n = text.length();
+
+		// Column for the empty text: distance i for the first i characters
+		for(int w = 0; w < this.words; w++) {
+			this.pv[w] = -1L;
+			this.mv[w] = 0;
+		}
+
+		int score = this.m;
+		int best = score;
+
+		for(int i = from; i < to; i++) {
+			int c = this.bsd.symbol(text.charAt(((i % n) + n) % n));
+
+			// The top row is zero everywhere, as a match may start anywhere
+			int carry = 0;
+			for(int w = 0; w < this.words; w++)
+				carry = advance(w, c < 0 ? 0 : this.peq[c][w], carry);
+
+			score += carry;
+			best = Math.min(best, score);
+		}
+
+		return best;
+	}
+
+	/**
+	 * Advance one word of the column by a text character matching the
+	 * pattern at eq, given the horizontal difference above the word.
+	 *
+	 * @return the horizontal difference at the word's bottom.
+	 */
+	private int advance(int w, long eq, int hin) {
+		long pv = this.pv[w];
+		long mv = this.mv[w];
+
+		long xv = eq | mv;
+		if(hin < 0)
+			eq |= 1L;
+		long xh = (((eq & pv) + pv) ^ pv) | eq;
+
+		long ph = mv | ~(xh | pv);
+		long mh = pv & xh;
+
+		long bottom = w == this.words - 1 ? this.last : 1L << 63;
+		int hout = (ph & bottom) != 0 ? 1 : (mh & bottom) != 0 ? -1 : 0;
+
+		ph <<= 1;
+		mh <<= 1;
+		if(hin < 0)
+			mh |= 1L;
+		else if(hin > 0)
+			ph |= 1L;
+
+		this.pv[w] = mh | ~(xv | ph);
+		this.mv[w] = ph & xv;
+
+		return hout;
+	}
+}
@@ -0,0 +1,10 @@
+package fi.helsinki.cs.u.aitakang;
+
+/**
+ * Receives the intervals found by a batch IntervalIndex search, along with
+ * the index of the occurrence whose range each overlaps.
+ */
+public interface OccurrenceVisitor<T extends Range> {
+
+	public void visit(int occurrence, T interval);
+}
@@ -0,0 +1,58 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A long-indexed array of 40-bit unsigned values stored off-heap, for text
+ * positions in texts larger than 2^31 characters. 40 bits address up to 1T
+ * positions while using 5 bytes per entry instead of the 8 of a long.
+ *
+ * The entries are kept in direct buffers of CHUNK_ENTRIES entries each, as a
+ * single buffer can only be indexed by an int.
+ */
+public class Packed40Array {
+
+	public static final long MAX_VALUE = (1L << 40) - 1;
+
+	private static final int ENTRY_BYTES = 5;
+	private static final int CHUNK_SHIFT = 27;
+	private static final int CHUNK_ENTRIES = 1 << CHUNK_SHIFT;
+
+	/** Number of entries. */
+	public final long length;
+
+	protected final ByteBuffer[] chunks;
+
+
+	public Packed40Array(long length) {
+		this.length = length;
+
+		int count = (int)((length + CHUNK_ENTRIES - 1) >>> CHUNK_SHIFT);
+		this.chunks = new ByteBuffer[count];
+		for(int i = 0; i < count; i++) {
+			long entries = Math.min(CHUNK_ENTRIES, length - ((long)i << CHUNK_SHIFT));
+			this.chunks[i] = ByteBuffer.allocateDirect((int)entries * ENTRY_BYTES)
+					.order(ByteOrder.LITTLE_ENDIAN);
+		}
+	}
+
+	public long get(long i) {
+		ByteBuffer chunk = this.chunks[(int)(i >>> CHUNK_SHIFT)];
+		int offset = (int)(i & (CHUNK_ENTRIES - 1)) * ENTRY_BYTES;
+
+		return (chunk.getInt(offset) & 0xffffffffL)
+				| ((long)(chunk.get(offset + 4) & 0xff) << 32);
+	}
+
+	public void set(long i, long value) {
+		if(value < 0 || value > MAX_VALUE)
+			throw new IllegalArgumentException("Value does not fit in 40 bits: " + value);
+
+		ByteBuffer chunk = this.chunks[(int)(i >>> CHUNK_SHIFT)];
+		int offset = (int)(i & (CHUNK_ENTRIES - 1)) * ENTRY_BYTES;
+
+		chunk.putInt(offset, (int)value);
+		chunk.put(offset + 4, (byte)(value >>> 32));
+	}
+}
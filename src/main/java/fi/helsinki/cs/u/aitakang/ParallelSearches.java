@@ -0,0 +1,401 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inexact backwards search split over a ForkJoinPool, for single expensive
+ * queries. The branches of the search tree are independent, so the search is
+ * expanded into tasks, each of which searches its branches with the
+ * sequential Searches.inexactBackwardsSearch and returns its own matches.
+ *
+ * A task is a group of branches at the same suffix array range: a symbol's
+ * match or replacement and its insertion, which reach many of the same
+ * states, or the deletion. A task whose range has enough rows expands its
+ * branches by one step, forking the groups that still have enough rows and
+ * searching the others itself. The rows needed are picked from the text
+ * length and the pool size, for several tasks per thread, so a large text is
+ * split deeper than a small one.
+ *
+ * Each task has its own record of visited states, so a state reached in two
+ * tasks is expanded in both. The duplicate matches are merged away when each
+ * suffix array position is reported once, so the results are the same as the
+ * sequential search's. With a single thread the search isn't split at all.
+ *
+ * The tasks share one budget. Each counts its states in batches, so the state
+ * limit may be overshot by up to a batch per thread, and the match limit by a
+ * match per thread.
+ */
+public class ParallelSearches {
+
+	/** Ranges with fewer suffix array rows are never split. */
+	static final int MIN_SPLIT = 1 << 12;
+
+	/** Tasks to aim for per thread, so that the load evens out. */
+	private static final int TASKS_PER_THREAD = 8;
+
+
+	public static List<InexactMatch> inexactBackwardsSearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int limit, String pattern,
+			ForkJoinPool pool) {
+		return inexactBackwardsSearch(text, sa, bsd, null, limit, pattern, pool,
+				SearchBudget.unlimited());
+	}
+
+	/**
+	 * Parallel inexact backwards search within the given budget. If it runs
+	 * out, the matches found so far are returned and the budget is marked
+	 * exhausted.
+	 */
+	public static List<InexactMatch> inexactBackwardsSearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int limit, String pattern,
+			ForkJoinPool pool, SearchBudget budget) {
+		return inexactBackwardsSearch(text, sa, bsd, null, limit, pattern, pool,
+				budget);
+	}
+
+	/**
+	 * Parallel inexact backwards search, pruned with lower bounds found using
+	 * the reversed text's data.
+	 */
+	public static List<InexactMatch> inexactBackwardsSearch(CharSequence text,
+			IntBuffer sa, BidirectionalSearchData bid, int limit, String pattern,
+			ForkJoinPool pool) {
+		return inexactBackwardsSearch(text, sa, bid, limit, pattern, pool,
+				SearchBudget.unlimited());
+	}
+
+	public static List<InexactMatch> inexactBackwardsSearch(CharSequence text,
+			IntBuffer sa, BidirectionalSearchData bid, int limit, String pattern,
+			ForkJoinPool pool, SearchBudget budget) {
+		return inexactBackwardsSearch(text, sa, bid.forward,
+				Searches.lowerBounds(bid.reverse, pattern, true), limit, pattern,
+				pool, budget);
+	}
+
+	private static List<InexactMatch> inexactBackwardsSearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int[] bounds, int limit,
+			String pattern, ForkJoinPool pool, SearchBudget budget) {
+		if(pool.getParallelism() == 1)
+			return Searches.inexactBackwardsSearch(text, sa, bsd, bounds, limit,
+					pattern, budget);
+
+		int splitRows = Math.max(MIN_SPLIT,
+				bsd.length() / (TASKS_PER_THREAD * pool.getParallelism()));
+		SharedBudget shared = new SharedBudget(budget);
+		Search search = new Search(text, sa, bsd, pattern, limit, bounds,
+				splitRows, shared);
+
+		char[] spec = new char[pattern.length() + limit];
+		List<Branch> root = new ArrayList<>();
+		root.add(new Branch(pattern.length() - 1, 0, 0, spec, spec.length));
+
+		List<InexactMatch> results = pool.invoke(new SearchTask(search, 0,
+				bsd.length(), root));
+
+		budget.finish(shared.nodes.get(), shared.results.get(), shared.exhausted);
+		return Searches.reportOnce(results, pattern.length());
+	}
+
+
+	/**
+	 * What all the tasks of one search share.
+	 */
+	private static class Search {
+		final CharSequence text;
+		final IntBuffer sa;
+		final BackwardsSearchData bsd;
+		final String pattern;
+		final int limit;
+		final int[] bounds;
+
+		/** Ranges with at least this many rows are expanded into tasks. */
+		final int splitRows;
+
+		final SharedBudget budget;
+
+		Search(CharSequence text, IntBuffer sa, BackwardsSearchData bsd,
+				String pattern, int limit, int[] bounds, int splitRows,
+				SharedBudget budget) {
+			this.text = text;
+			this.sa = sa;
+			this.bsd = bsd;
+			this.pattern = pattern;
+			this.limit = limit;
+			this.bounds = bounds;
+			this.splitRows = splitRows;
+			this.budget = budget;
+		}
+	}
+
+	/**
+	 * A branch of the search, at the suffix array range of its task.
+	 */
+	private static class Branch {
+		final int pos;
+		final int diff;
+		final int length;
+
+		/** This branch's own copy of the edits, filled in from the end. */
+		final char[] spec;
+		final int specBegin;
+
+		Branch(int pos, int diff, int length, char[] spec, int specBegin) {
+			this.pos = pos;
+			this.diff = diff;
+			this.length = length;
+			this.spec = spec;
+			this.specBegin = specBegin;
+		}
+
+		/**
+		 * The branch after the given edit.
+		 */
+		Branch next(char op, int pos, int diff, int length) {
+			char[] spec = this.spec.clone();
+			spec[specBegin - 1] = op;
+
+			return new Branch(pos, diff, length, spec, specBegin - 1);
+		}
+	}
+
+	/**
+	 * Search a group of branches at the same range. A range with enough rows
+	 * is expanded, forking a task of each group of the next branches with
+	 * enough rows and searching the rest here, sharing one record of visited
+	 * states. A smaller range is searched sequentially.
+	 */
+	private static class SearchTask extends RecursiveTask<List<InexactMatch>> {
+		private static final long serialVersionUID = 1L;
+
+		final Search search;
+		final int lo;
+		final int hi;
+		final List<Branch> branches;
+
+		SearchTask(Search search, int lo, int hi, List<Branch> branches) {
+			this.search = search;
+			this.lo = lo;
+			this.hi = hi;
+			this.branches = branches;
+		}
+
+		@Override
+		protected List<InexactMatch> compute() {
+			List<InexactMatch> results = new ArrayList<>();
+			TaskBudget budget = new TaskBudget(search.budget);
+
+			try {
+				if(hi - lo < search.splitRows)
+					search(results, budget, new VisitedStates(), new SearchStack());
+				else
+					expand(results, budget);
+			}
+			finally {
+				budget.flush();
+			}
+
+			return results;
+		}
+
+		/**
+		 * Search the branches with the sequential search, on this thread.
+		 */
+		private void search(List<InexactMatch> results, SearchBudget budget,
+				VisitedStates visited, SearchStack stack) {
+			for(Branch branch: branches) {
+				if(budget.isExhausted())
+					return;
+
+				Searches.inexactBackwardsSearch(search.text, search.sa,
+						search.bsd, search.pattern, search.limit, results, visited,
+						search.bounds, stack, budget, branch.pos, branch.diff,
+						branch.length, lo, hi, branch.spec, branch.specBegin,
+						branch.spec.length);
+			}
+		}
+
+		private void expand(List<InexactMatch> results, TaskBudget budget) {
+			BackwardsSearchData bsd = search.bsd;
+			int[] bounds = search.bounds;
+
+			// The next branches by symbol, and the deletions
+			List<List<Branch>> next = new ArrayList<>();
+			for(int c = 0; c < bsd.sigma(); c++)
+				next.add(new ArrayList<Branch>());
+			List<Branch> deletions = new ArrayList<>();
+
+			int[] newLos = new int[bsd.sigma()];
+			int[] newHis = new int[bsd.sigma()];
+			for(int c = 0; c < bsd.sigma(); c++) {
+				newLos[c] = bsd.counts[c] + bsd.rank(c, lo);
+				newHis[c] = bsd.counts[c] + bsd.rank(c, hi);
+			}
+
+			VisitedStates visited = new VisitedStates();
+			for(Branch branch: branches) {
+				int pos = branch.pos;
+				int diff = branch.diff;
+				int length = branch.length;
+
+				// The same cuts as the sequential search makes
+				if(diff > search.limit)
+					continue;
+				if(bounds != null && pos >= 0 && diff + bounds[pos] > search.limit)
+					continue;
+				if(!visited.visit(pos, lo, hi, length, diff))
+					continue;
+				if(!budget.expand())
+					return;
+
+				if(pos < 0) {
+					results.add(new InexactMatch(lo, hi, length,
+							new String(branch.spec, branch.specBegin,
+									branch.spec.length - branch.specBegin), diff));
+					if(!budget.report())
+						return;
+					continue;
+				}
+
+				char last = branch.specBegin < branch.spec.length ?
+						branch.spec[branch.specBegin] : 'M';
+
+				for(int c = 0; c < bsd.sigma(); c++) {
+					if(newLos[c] == newHis[c])
+						continue;
+
+					// Match or replacement
+					if(bsd.symbols[c] == search.pattern.charAt(pos))
+						next.get(c).add(branch.next('M', pos - 1, diff, length + 1));
+					else
+						next.get(c).add(branch.next('R', pos - 1, diff + 1, length + 1));
+
+					// Insertion
+					if(last != 'D')
+						next.get(c).add(branch.next('I', pos, diff + 1, length + 1));
+				}
+
+				// Deletion
+				if(last != 'I')
+					deletions.add(branch.next('D', pos - 1, diff + 1, length));
+			}
+
+			List<SearchTask> tasks = new ArrayList<>();
+			for(int c = 0; c < bsd.sigma(); c++)
+				if(!next.get(c).isEmpty())
+					tasks.add(new SearchTask(search, newLos[c], newHis[c], next.get(c)));
+			if(!deletions.isEmpty())
+				tasks.add(new SearchTask(search, lo, hi, deletions));
+
+			List<SearchTask> forked = new ArrayList<>();
+			for(SearchTask task: tasks) {
+				if(task.hi - task.lo >= search.splitRows) {
+					task.fork();
+					forked.add(task);
+				}
+			}
+
+			// The small groups are searched here, sharing one record
+			visited = new VisitedStates();
+			SearchStack stack = new SearchStack();
+			for(SearchTask task: tasks)
+				if(task.hi - task.lo < search.splitRows)
+					task.search(results, budget, visited, stack);
+
+			// Waiting, this thread may run other tasks, so count this one's
+			// states first
+			budget.flush();
+			for(int i = forked.size() - 1; i >= 0; i--)
+				results.addAll(forked.get(i).join());
+		}
+	}
+
+	/**
+	 * The caller's budget, shared by the tasks.
+	 */
+	private static class SharedBudget {
+		final long maxNodes;
+		final int maxResults;
+		final long deadline;
+
+		final AtomicLong nodes = new AtomicLong();
+		final AtomicInteger results = new AtomicInteger();
+		volatile boolean exhausted;
+
+		SharedBudget(SearchBudget budget) {
+			this.maxNodes = budget.maxNodes;
+			this.maxResults = budget.maxResults;
+			this.deadline = budget.timeoutMillis > 0 ?
+					System.nanoTime() + budget.timeoutMillis * 1000000 : Long.MAX_VALUE;
+		}
+
+		boolean expand(int count) {
+			if(this.nodes.addAndGet(count) > this.maxNodes)
+				this.exhausted = true;
+			else if(this.deadline != Long.MAX_VALUE && System.nanoTime() > this.deadline)
+				this.exhausted = true;
+
+			return !this.exhausted;
+		}
+
+		boolean report() {
+			if(this.results.incrementAndGet() >= this.maxResults)
+				this.exhausted = true;
+
+			return !this.exhausted;
+		}
+	}
+
+	/**
+	 * A task's view of the shared budget. The states are counted here and
+	 * added to the shared count a batch at a time, so that the threads don't
+	 * contend on every state.
+	 */
+	private static class TaskBudget extends SearchBudget {
+
+		private static final int BATCH = 256;
+
+		private final SharedBudget shared;
+		private int unflushed;
+
+		TaskBudget(SharedBudget shared) {
+			super(0, 0, 0);
+			this.shared = shared;
+		}
+
+		@Override
+		public boolean expand() {
+			if(this.shared.exhausted)
+				return false;
+
+			this.unflushed += 1;
+			if(this.unflushed == BATCH)
+				flush();
+
+			return !this.shared.exhausted;
+		}
+
+		@Override
+		public boolean report() {
+			return this.shared.report();
+		}
+
+		@Override
+		public boolean isExhausted() {
+			return this.shared.exhausted;
+		}
+
+		/**
+		 * Add the states counted here to the shared count.
+		 */
+		void flush() {
+			this.shared.expand(this.unflushed);
+			this.unflushed = 0;
+		}
+	}
+}
@@ -0,0 +1,425 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parallel suffix array construction by prefix doubling, as an alternative to
+ * the single-threaded sais.suffixsort with identical output.
+ *
+ * This is Larsson and Sadakane's prefix doubling, as in LargeSuffixSort. The
+ * suffixes are first grouped by their first character, each ranked by the
+ * last suffix array index of its group. Each round then sorts every group of
+ * more than one suffix by the rank of the suffix h characters later, and
+ * splits it into new groups by that rank. Groups of one are final. Unlike
+ * LargeSuffixSort, the groups left to sort are kept in a list rather than
+ * found by scanning the suffix array, so the sorted suffixes are never
+ * visited again and no step of a round is serial.
+ *
+ * A round runs in two parallel steps over its groups: all of them are sorted
+ * by keys read from the previous round's ranks, and only then are they split
+ * and re-ranked, so that no group reads ranks another is writing. A group
+ * large enough is itself quicksorted in parallel.
+ *
+ * Besides the suffix array, only the ranks and keys are needed, 8 bytes per
+ * character, and the list of groups.
+ */
+public class ParallelSuffixSort {
+
+	/** Ranges shorter than this are handled by a single thread. */
+	private static final int SEQUENTIAL_THRESHOLD = 1 << 14;
+
+	/** Ranges shorter than this are insertion sorted. */
+	private static final int INSERTION_THRESHOLD = 16;
+
+
+	/**
+	 * Construct the suffix array of the first n characters of T into SA,
+	 * using the given number of threads.
+	 *
+	 * @return 0 on success, -1 on invalid arguments, like sais.suffixsort.
+	 */
+	public static int suffixsort(CharSequence T, int[] SA, int n, int threads) {
+		if(T == null || SA == null || T.length() < n || SA.length < n || threads < 1)
+			return -1;
+		if(n <= 1) {
+			if(n == 1)
+				SA[0] = 0;
+			return 0;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			sort(T, SA, n, pool);
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		return 0;
+	}
+
+	private static void sort(CharSequence T, int[] sa, int n, ForkJoinPool pool) {
+		int[] rank = new int[n];
+		int[] keys = new int[n];
+
+		// Bucket the suffixes by their first character
+		int[] starts = new int[Character.MAX_VALUE + 2];
+		for(int i = 0; i < n; i++)
+			starts[T.charAt(i) + 1] += 1;
+		for(int c = 1; c < starts.length; c++)
+			starts[c] += starts[c - 1];
+
+		Groups groups = new Groups();
+		int[] next = Arrays.copyOf(starts, starts.length - 1);
+		for(int i = 0; i < n; i++) {
+			int c = T.charAt(i);
+			sa[next[c]++] = i;
+			rank[i] = starts[c + 1] - 1;
+		}
+		for(int c = 0; c < next.length; c++) {
+			if(next[c] - starts[c] > 1)
+				groups.add(starts[c], next[c]);
+		}
+
+		for(int h = 1; groups.count > 0; h *= 2) {
+			pool.invoke(new SortTask(groups, sa, rank, keys, h, 0, groups.count));
+			groups = pool.invoke(new SplitTask(groups, sa, rank, keys, 0, groups.count));
+		}
+
+		// Every suffix is now ranked by its index
+		pool.invoke(new RebuildTask(sa, rank, 0, n));
+	}
+
+
+	/**
+	 * A list of groups of more than one suffix, sa[lo, hi).
+	 */
+	private static class Groups {
+		int[] los = new int[16];
+		int[] his = new int[16];
+
+		/** Suffixes in the groups before each one. */
+		int[] before = new int[17];
+
+		int count;
+
+		void add(int lo, int hi) {
+			reserve(this.count + 1);
+
+			this.los[this.count] = lo;
+			this.his[this.count] = hi;
+			this.before[this.count + 1] = this.before[this.count] + hi - lo;
+			this.count += 1;
+		}
+
+		/**
+		 * Append the groups of other.
+		 *
+		 * @return this.
+		 */
+		Groups addAll(Groups other) {
+			reserve(this.count + other.count);
+
+			System.arraycopy(other.los, 0, this.los, this.count, other.count);
+			System.arraycopy(other.his, 0, this.his, this.count, other.count);
+			int suffixes = this.before[this.count];
+			for(int g = 1; g <= other.count; g++)
+				this.before[this.count + g] = suffixes + other.before[g];
+			this.count += other.count;
+
+			return this;
+		}
+
+		/**
+		 * A group where to divide the groups [from, to) between threads: the
+		 * first at or after their middle suffix, but neither the first nor
+		 * past the last group. -1 if they are too few to divide.
+		 */
+		int middle(int from, int to) {
+			int suffixes = this.before[to] - this.before[from];
+			if(to - from < 2 || suffixes <= SEQUENTIAL_THRESHOLD)
+				return -1;
+
+			int middle = Arrays.binarySearch(this.before, from + 1, to,
+					this.before[from] + suffixes / 2);
+			if(middle < 0)
+				middle = Math.min(-middle - 1, to - 1);
+			return middle;
+		}
+
+		private void reserve(int count) {
+			if(count > this.los.length) {
+				int length = Math.max(count, 2 * this.los.length);
+				this.los = Arrays.copyOf(this.los, length);
+				this.his = Arrays.copyOf(this.his, length);
+				this.before = Arrays.copyOf(this.before, length + 1);
+			}
+		}
+	}
+
+	/**
+	 * Sort the groups [from, to) by their keys, halving them by their
+	 * suffixes between threads.
+	 */
+	private static class SortTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final Groups groups;
+		final int[] sa;
+		final int[] rank;
+		final int[] keys;
+		final int h;
+		final int from;
+		final int to;
+
+		SortTask(Groups groups, int[] sa, int[] rank, int[] keys, int h,
+				int from, int to) {
+			this.groups = groups;
+			this.sa = sa;
+			this.rank = rank;
+			this.keys = keys;
+			this.h = h;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			int middle = groups.middle(from, to);
+			if(middle >= 0) {
+				invokeAll(new SortTask(groups, sa, rank, keys, h, from, middle),
+						new SortTask(groups, sa, rank, keys, h, middle, to));
+				return;
+			}
+
+			for(int g = from; g < to; g++) {
+				int lo = groups.los[g];
+				int hi = groups.his[g];
+
+				for(int j = lo; j < hi; j++)
+					keys[j] = key(rank, h, sa[j]);
+
+				if(hi - lo > SEQUENTIAL_THRESHOLD)
+					new QuicksortTask(sa, keys, lo, hi).invoke();
+				else
+					sort(sa, keys, lo, hi);
+			}
+		}
+	}
+
+	/**
+	 * Split and re-rank the sorted groups [from, to), halving them by their
+	 * suffixes between threads.
+	 *
+	 * Returns the new groups of more than one suffix.
+	 */
+	private static class SplitTask extends RecursiveTask<Groups> {
+		private static final long serialVersionUID = 1L;
+
+		final Groups groups;
+		final int[] sa;
+		final int[] rank;
+		final int[] keys;
+		final int from;
+		final int to;
+
+		SplitTask(Groups groups, int[] sa, int[] rank, int[] keys,
+				int from, int to) {
+			this.groups = groups;
+			this.sa = sa;
+			this.rank = rank;
+			this.keys = keys;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Groups compute() {
+			int middle = groups.middle(from, to);
+			if(middle >= 0) {
+				SplitTask right = new SplitTask(groups, sa, rank, keys, middle, to);
+				right.fork();
+				Groups left = new SplitTask(groups, sa, rank, keys, from, middle).compute();
+				return left.addAll(right.join());
+			}
+
+			Groups split = new Groups();
+			for(int g = from; g < to; g++)
+				split(sa, rank, keys, groups.los[g], groups.his[g], split);
+			return split;
+		}
+	}
+
+	/**
+	 * Quicksort sa[lo, hi) by keys, forking the sides.
+	 */
+	private static class QuicksortTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final int[] sa;
+		final int[] keys;
+		final int lo;
+		final int hi;
+
+		QuicksortTask(int[] sa, int[] keys, int lo, int hi) {
+			this.sa = sa;
+			this.keys = keys;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if(hi - lo <= SEQUENTIAL_THRESHOLD) {
+				sort(sa, keys, lo, hi);
+				return;
+			}
+
+			long bounds = partition(sa, keys, lo, hi);
+			int lt = (int)(bounds >>> 32);
+			int gt = (int)bounds;
+
+			invokeAll(new QuicksortTask(sa, keys, lo, lt),
+					new QuicksortTask(sa, keys, gt, hi));
+		}
+	}
+
+	/**
+	 * Set sa[rank[i]] = i for i in [lo, hi).
+	 */
+	private static class RebuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		final int[] sa;
+		final int[] rank;
+		final int lo;
+		final int hi;
+
+		RebuildTask(int[] sa, int[] rank, int lo, int hi) {
+			this.sa = sa;
+			this.rank = rank;
+			this.lo = lo;
+			this.hi = hi;
+		}
+
+		@Override
+		protected void compute() {
+			if(hi - lo > SEQUENTIAL_THRESHOLD) {
+				int mid = (lo + hi) >>> 1;
+				invokeAll(new RebuildTask(sa, rank, lo, mid),
+						new RebuildTask(sa, rank, mid, hi));
+				return;
+			}
+
+			for(int i = lo; i < hi; i++)
+				sa[rank[i]] = i;
+		}
+	}
+
+
+	/**
+	 * The sort key of suffix i: the rank of the suffix h characters later,
+	 * plus one. A suffix shorter than h + 1 has none, and sorts before any
+	 * that does.
+	 */
+	private static int key(int[] rank, int h, int i) {
+		return i + h < rank.length ? rank[i + h] + 1 : 0;
+	}
+
+	/**
+	 * Three-way quicksort sa[lo, hi) by keys, permuting keys along.
+	 */
+	private static void sort(int[] sa, int[] keys, int lo, int hi) {
+		while(hi - lo > INSERTION_THRESHOLD) {
+			long bounds = partition(sa, keys, lo, hi);
+			int lt = (int)(bounds >>> 32);
+			int gt = (int)bounds;
+
+			// Recurse into the smaller side, so the depth stays logarithmic
+			if(lt - lo < hi - gt) {
+				sort(sa, keys, lo, lt);
+				lo = gt;
+			}
+			else {
+				sort(sa, keys, gt, hi);
+				hi = lt;
+			}
+		}
+
+		for(int i = lo + 1; i < hi; i++) {
+			int suffix = sa[i];
+			int key = keys[i];
+
+			int j = i - 1;
+			while(j >= lo && keys[j] > key) {
+				sa[j + 1] = sa[j];
+				keys[j + 1] = keys[j];
+				j -= 1;
+			}
+			sa[j + 1] = suffix;
+			keys[j + 1] = key;
+		}
+	}
+
+	/**
+	 * Partition sa[lo, hi) around the median of three keys into the keys
+	 * less than, equal to and greater than it.
+	 *
+	 * @return the start of the equal and greater parts, lt and gt, as
+	 * lt << 32 | gt.
+	 */
+	private static long partition(int[] sa, int[] keys, int lo, int hi) {
+		int a = keys[lo];
+		int b = keys[(lo + hi) >>> 1];
+		int c = keys[hi - 1];
+		int pivot = Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+
+		// [lo, lt) is less than the pivot, [gt, hi) greater
+		int lt = lo;
+		int gt = hi;
+		for(int i = lo; i < gt;) {
+			int k = keys[i];
+			if(k < pivot)
+				swap(sa, keys, lt++, i++);
+			else if(k > pivot)
+				swap(sa, keys, i, --gt);
+			else
+				i++;
+		}
+
+		return (long)lt << 32 | gt;
+	}
+
+	/**
+	 * Split the sorted group sa[lo, hi) into groups of equal keys, ranking
+	 * each suffix by the last index of its new group, and add those of more
+	 * than one suffix to groups.
+	 */
+	private static void split(int[] sa, int[] rank, int[] keys, int lo, int hi,
+			Groups groups) {
+		int end = hi - 1;
+		for(int j = hi - 1; j >= lo; j--) {
+			rank[sa[j]] = end;
+
+			// j starts the new group
+			if(j == lo || keys[j - 1] != keys[j]) {
+				if(end > j)
+					groups.add(j, end + 1);
+				end = j - 1;
+			}
+		}
+	}
+
+	private static void swap(int[] sa, int[] keys, int i, int j) {
+		int tmp = sa[i];
+		sa[i] = sa[j];
+		sa[j] = tmp;
+
+		tmp = keys[i];
+		keys[i] = keys[j];
+		keys[j] = tmp;
+	}
+}
@@ -0,0 +1,58 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.util.Arrays;
+
+/**
+ * Least significant digit first radix sort of ints, a byte at a time. Passes
+ * where every key has the same byte are skipped, so text positions, which
+ * seldom use the top byte, usually take three passes.
+ */
+public class RadixSort {
+
+	/** Below this many keys Arrays.sort is faster. */
+	private static final int SMALL = 64;
+
+
+	/**
+	 * Sort the first count elements of the array in place, ascending.
+	 */
+	public static void sort(int[] a, int count) {
+		if(count < SMALL) {
+			Arrays.sort(a, 0, count);
+			return;
+		}
+
+		int[] from = a;
+		int[] to = new int[count];
+		int[] buckets = new int[256];
+
+		for(int shift = 0; shift < 32; shift += 8) {
+			// The top byte's sign bit is flipped so negative keys come first
+			int flip = shift == 24 ? 0x80 : 0;
+
+			Arrays.fill(buckets, 0);
+			for(int i = 0; i < count; i++)
+				buckets[((from[i] >>> shift) & 0xff) ^ flip] += 1;
+
+			// All keys in one bucket, this byte doesn't change the order
+			if(buckets[((from[0] >>> shift) & 0xff) ^ flip] == count)
+				continue;
+
+			for(int b = 0, sum = 0; b < 256; b++) {
+				int size = buckets[b];
+				buckets[b] = sum;
+				sum += size;
+			}
+
+			for(int i = 0; i < count; i++)
+				to[buckets[((from[i] >>> shift) & 0xff) ^ flip]++] = from[i];
+
+			int[] swap = from;
+			from = to;
+			to = swap;
+		}
+
+		if(from != a)
+			System.arraycopy(from, 0, a, 0, count);
+	}
+}
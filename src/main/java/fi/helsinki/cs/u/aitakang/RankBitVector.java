@@ -0,0 +1,77 @@
+package fi.helsinki.cs.u.aitakang;
+
+/**
+ * A fixed length bit vector supporting constant time rank queries.
+ *
+ * The bits are stored in 64-bit words. For every superblock of
+ * SUPERBLOCK_WORDS words the number of set bits before that superblock is
+ * stored, so a rank query is one lookup plus at most SUPERBLOCK_WORDS
+ * popcounts.
+ */
+public class RankBitVector {
+
+	private static final int SUPERBLOCK_WORDS = 8;
+	private static final int SUPERBLOCK_SHIFT = 9; // 64 * 8 bits
+
+	/** Number of bits in the vector. */
+	public final int length;
+
+	/** The bits, lowest bit of each word first. */
+	protected final long[] words;
+
+	/** Count of set bits before each superblock. */
+	protected int[] superblocks;
+
+
+	public RankBitVector(int length) {
+		this.length = length;
+		this.words = new long[(length >>> 6) + 1];
+	}
+
+	public void set(int i) {
+		this.words[i >>> 6] |= 1L << i;
+	}
+
+	public boolean get(int i) {
+		return (this.words[i >>> 6] & (1L << i)) != 0;
+	}
+
+	/**
+	 * Calculate the rank lookup data. Must be called after the last set() and
+	 * before the first rank query.
+	 */
+	public void seal() {
+		this.superblocks = new int[this.words.length / SUPERBLOCK_WORDS + 1];
+
+		int running = 0;
+		for(int i = 0; i < this.words.length; i++) {
+			if(i % SUPERBLOCK_WORDS == 0)
+				this.superblocks[i / SUPERBLOCK_WORDS] = running;
+			running += Long.bitCount(this.words[i]);
+		}
+	}
+
+	/**
+	 * The number of set bits before position N.
+	 */
+	public int rank1(int n) {
+		int rank = this.superblocks[n >>> SUPERBLOCK_SHIFT];
+
+		int word = n >>> 6;
+		for(int i = (n >>> SUPERBLOCK_SHIFT) * SUPERBLOCK_WORDS; i < word; i++)
+			rank += Long.bitCount(this.words[i]);
+
+		// Bits of the last word below position N
+		if((n & 63) != 0)
+			rank += Long.bitCount(this.words[word] & (-1L >>> (64 - (n & 63))));
+
+		return rank;
+	}
+
+	/**
+	 * The number of unset bits before position N.
+	 */
+	public int rank0(int n) {
+		return n - rank1(n);
+	}
+}
@@ -0,0 +1,66 @@
+package fi.helsinki.cs.u.aitakang;
+
+/**
+ * Passes the rows found by a ColumnIntervalTree search on to an
+ * IntervalIndex's visitor as intervals. An index keeps one adapter per
+ * thread, and each search sets the visitor for its duration, restoring the
+ * one of any search it runs within, so the searches allocate nothing.
+ */
+abstract class RowAdapter<T> implements ColumnIntervalTree.RowVisitor,
+		ColumnIntervalTree.OccurrenceRowVisitor {
+
+	private IntervalVisitor<? super T> visitor;
+	private OccurrenceVisitor<? super T> occurrenceVisitor;
+
+
+	/**
+	 * The interval of the row.
+	 */
+	protected abstract T interval(int row);
+
+	public void find(ColumnIntervalTree tree, int begin, int end,
+			IntervalVisitor<? super T> visitor) {
+		IntervalVisitor<? super T> outer = this.visitor;
+		this.visitor = visitor;
+		try {
+			tree.find(begin, end, this);
+		}
+		finally {
+			this.visitor = outer;
+		}
+	}
+
+	public void find(ColumnIntervalTree tree, int point,
+			IntervalVisitor<? super T> visitor) {
+		IntervalVisitor<? super T> outer = this.visitor;
+		this.visitor = visitor;
+		try {
+			tree.find(point, this);
+		}
+		finally {
+			this.visitor = outer;
+		}
+	}
+
+	public void find(ColumnIntervalTree tree, int[] positions, int count,
+			int length, OccurrenceVisitor<? super T> visitor) {
+		OccurrenceVisitor<? super T> outer = this.occurrenceVisitor;
+		this.occurrenceVisitor = visitor;
+		try {
+			tree.find(positions, count, length, this);
+		}
+		finally {
+			this.occurrenceVisitor = outer;
+		}
+	}
+
+	@Override
+	public void visit(int row) {
+		this.visitor.visit(interval(row));
+	}
+
+	@Override
+	public void visit(int occurrence, int row) {
+		this.occurrenceVisitor.visit(occurrence, interval(row));
+	}
+}
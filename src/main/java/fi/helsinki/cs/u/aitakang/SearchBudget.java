@@ -0,0 +1,112 @@
+package fi.helsinki.cs.u.aitakang;
+
+/**
+ * Limits on the work of an inexact search: the search states expanded, the
+ * matches found and the time taken. A search that runs out of budget stops
+ * and returns the matches found so far, and the budget is left marked as
+ * exhausted, so the caller can tell partial results apart or fail the query.
+ *
+ * A budget is restarted by each search it's given to, so one can be reused
+ * for consecutive searches, but not shared by concurrent ones. A search split
+ * over threads by ParallelSearches shares it between its tasks itself.
+ */
+public class SearchBudget {
+
+	/** The deadline is only checked every this many states, as a mask. */
+	private static final int CLOCK_INTERVAL = 1024 - 1;
+
+	/** Limits, or 0 for no limit. */
+	public final long maxNodes;
+	public final int maxResults;
+	public final long timeoutMillis;
+
+	private long nodes;
+	private int results;
+	private long deadline;
+	private boolean exhausted;
+
+
+	/**
+	 * @param maxNodes Search states to expand at most, or 0 for no limit.
+	 * @param maxResults Matches to find at most, before merging them to report
+	 *        each suffix array position once, or 0 for no limit.
+	 * @param timeoutMillis Time a search may take, or 0 for no limit.
+	 */
+	public SearchBudget(long maxNodes, int maxResults, long timeoutMillis) {
+		this.maxNodes = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+		this.maxResults = maxResults > 0 ? maxResults : Integer.MAX_VALUE;
+		this.timeoutMillis = timeoutMillis;
+
+		start();
+	}
+
+	public static SearchBudget unlimited() {
+		return new SearchBudget(0, 0, 0);
+	}
+
+	/**
+	 * Reset the counts and start the clock, at the start of a search.
+	 */
+	public void start() {
+		this.nodes = 0;
+		this.results = 0;
+		this.exhausted = false;
+		this.deadline = this.timeoutMillis > 0 ?
+				System.nanoTime() + this.timeoutMillis * 1000000 : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Count expanding a search state.
+	 *
+	 * @return false if the search must stop.
+	 */
+	public boolean expand() {
+		this.nodes += 1;
+
+		if(this.nodes > this.maxNodes)
+			this.exhausted = true;
+		else if((this.nodes & CLOCK_INTERVAL) == 0 && this.deadline != Long.MAX_VALUE
+				&& System.nanoTime() > this.deadline)
+			this.exhausted = true;
+
+		return !this.exhausted;
+	}
+
+	/**
+	 * Count finding a match.
+	 *
+	 * @return false if the search must stop.
+	 */
+	public boolean report() {
+		this.results += 1;
+
+		if(this.results >= this.maxResults)
+			this.exhausted = true;
+
+		return !this.exhausted;
+	}
+
+	/**
+	 * Set the counts of a search whose tasks shared the budget, once it's
+	 * done.
+	 */
+	void finish(long nodes, int results, boolean exhausted) {
+		this.nodes = nodes;
+		this.results = results;
+		this.exhausted = exhausted;
+	}
+
+	/**
+	 * Whether the last search ran out of budget, so its results are partial.
+	 */
+	public boolean isExhausted() {
+		return this.exhausted;
+	}
+
+	/**
+	 * Search states expanded by the last search.
+	 */
+	public long nodes() {
+		return this.nodes;
+	}
+}
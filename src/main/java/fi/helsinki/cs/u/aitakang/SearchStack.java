@@ -0,0 +1,89 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.util.Arrays;
+
+/**
+ * The pending states of an inexact search, as an explicit stack instead of
+ * recursion, so that the depth of the search isn't limited by the thread's
+ * stack. A frame is a search state and the edit that led to it, kept in a
+ * growing int array so that pushing allocates nothing, and the same stack
+ * can be used for any number of searches.
+ *
+ * pop() makes the top frame current; its fields must be read before the
+ * next push, which reuses its slot.
+ */
+public class SearchStack {
+
+	/** The edit of a frame that starts a search. */
+	public static final char NONE = 0;
+
+	private static final int FRAME = 7;
+
+	private int[] frames = new int[64 * FRAME];
+
+	private int size;
+
+
+	/**
+	 * @param specIndex Where in the edit buffer the frame's edit goes; the
+	 *        searches fill the buffer from different ends.
+	 */
+	public void push(int pos, int diff, int length, int lo, int hi,
+			int specIndex, char op) {
+		int f = this.size * FRAME;
+		if(f == this.frames.length)
+			this.frames = Arrays.copyOf(this.frames, 2 * this.frames.length);
+
+		this.frames[f] = pos;
+		this.frames[f + 1] = diff;
+		this.frames[f + 2] = length;
+		this.frames[f + 3] = lo;
+		this.frames[f + 4] = hi;
+		this.frames[f + 5] = specIndex;
+		this.frames[f + 6] = op;
+
+		this.size += 1;
+	}
+
+	public void pop() {
+		this.size -= 1;
+	}
+
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	public void clear() {
+		this.size = 0;
+	}
+
+	// Fields of the frame last popped
+
+	public int pos() {
+		return this.frames[this.size * FRAME];
+	}
+
+	public int diff() {
+		return this.frames[this.size * FRAME + 1];
+	}
+
+	public int length() {
+		return this.frames[this.size * FRAME + 2];
+	}
+
+	public int lo() {
+		return this.frames[this.size * FRAME + 3];
+	}
+
+	public int hi() {
+		return this.frames[this.size * FRAME + 4];
+	}
+
+	public int specIndex() {
+		return this.frames[this.size * FRAME + 5];
+	}
+
+	public char op() {
+		return (char)this.frames[this.size * FRAME + 6];
+	}
+}
@@ -1,23 +1,40 @@
 package fi.helsinki.cs.u.aitakang;
 
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
- * The suffix array-based search algorithms. Here are implemented:
+ * The suffix array-based search algorithms. The text and suffix array are
+ * taken as a CharSequence and an IntBuffer, so they can be either on the heap
+ * or mapped from an index file. Here are implemented:
  * 
- *  - exact binary search
- *  - exact backwards search
+ *  - exact binary search, optionally LCP-accelerated
+ *  - exact backwards search, also over a LargeText with long positions
  *  - inexact binary search
  *  - inexact backwards search
+ *  - inexact backwards search for the best k matches
+ *  - inexact backwards search with replacements only
+ *  - inexact bidirectional search
+ *  - inexact backwards search by edit distance table
+ *  - inexact seed and verify search
  */
 public class Searches {
 
 	public static final char EOT = '\u0003';
 
-	public static Match binarySearch(String text, int[] sa, String pattern) {
+	public static Match binarySearch(CharSequence text, IntBuffer sa,
+			String pattern) {
 		int lo = 0;
-		int hi = sa.length - 1;
+		int hi = sa.limit() - 1;
 
 		for(int i = 0; i < pattern.length(); i++) {
 			char c = pattern.charAt(i);
@@ -27,10 +44,10 @@ public class Searches {
 			int lohi = hi;
 			while(lohi >= lolo) {
 				int mid = (lolo + lohi) / 2;
-				char cmid = text.charAt(sa[mid] + i);
+				char cmid = text.charAt(sa.get(mid) + i);
 
 				// Found lowest included?
-				if(cmid == c && (mid == lo || text.charAt(sa[mid - 1] + i) < c)) {
+				if(cmid == c && (mid == lo || text.charAt(sa.get(mid - 1) + i) < c)) {
 					lo = mid;
 					break;
 				}
@@ -50,11 +67,11 @@ public class Searches {
 			int hihi = hi;
 			while(hihi >= hilo) {
 				int mid = (hilo + hihi) / 2;
-				char cmid = text.charAt(sa[mid] + i);
+				char cmid = text.charAt(sa.get(mid) + i);
 
 				// Found lowest included?
 				if (cmid == c
-						&& (mid == hi || text.charAt(sa[mid + 1] + i) > c)) {
+						&& (mid == hi || text.charAt(sa.get(mid + 1) + i) > c)) {
 					hi = mid;
 					break;
 				}
@@ -73,16 +90,104 @@ public class Searches {
 		return new Match(lo, hi + 1, pattern.length());
 	}
 
-	public static Match backwardsSearch(String text, int[] sa,
+	/**
+	 * Exact binary search using the LCP data to skip characters already known
+	 * to match, so each pattern character is compared O(1) times per bound.
+	 */
+	public static Match binarySearch(CharSequence text, IntBuffer sa,
+			LcpSearchData lcp, String pattern) {
+		int lo = lcpBound(text, sa, lcp, pattern, false);
+		int hi = lcpBound(text, sa, lcp, pattern, true);
+
+		if(lo == hi)
+			return null;
+
+		return new Match(lo, hi, pattern.length());
+	}
+
+	/**
+	 * Find the first suffix array index whose suffix's pattern-length prefix
+	 * is not less than (or, for the upper bound, greater than) the pattern.
+	 *
+	 * Invariant: suffixes at L and before are before the bound, those at R and
+	 * after are at or past it. l and r are the LCPs of the pattern with the
+	 * suffixes at L and R.
+	 */
+	private static int lcpBound(CharSequence text, IntBuffer sa,
+			LcpSearchData lcp, String pattern, boolean upper) {
+		int n = sa.limit();
+		int m = pattern.length();
+
+		int L = -1;
+		int R = n;
+		int l = 0;
+		int r = 0;
+
+		while(R - L > 1) {
+			int M = (L + R) >>> 1;
+			int k;
+
+			if(l >= r) {
+				// M shares more with L than the pattern does, so it is on
+				// L's side. Sharing less means it is past the pattern.
+				if(lcp.llcp[M] > l) {
+					L = M;
+					continue;
+				}
+				if(lcp.llcp[M] < l) {
+					R = M;
+					r = lcp.llcp[M];
+					continue;
+				}
+				k = l;
+			}
+			else {
+				if(lcp.rlcp[M] > r) {
+					R = M;
+					continue;
+				}
+				if(lcp.rlcp[M] < r) {
+					L = M;
+					l = lcp.rlcp[M];
+					continue;
+				}
+				k = r;
+			}
+
+			// Compare the rest of the pattern to the suffix at M
+			int suffix = sa.get(M);
+			while(k < m && suffix + k < n && text.charAt(suffix + k) == pattern.charAt(k))
+				k += 1;
+
+			boolean before;
+			if(k == m)
+				before = upper;
+			else
+				before = suffix + k >= n || text.charAt(suffix + k) < pattern.charAt(k);
+
+			if(before) {
+				L = M;
+				l = k;
+			}
+			else {
+				R = M;
+				r = k;
+			}
+		}
+
+		return R;
+	}
+
+	public static Match backwardsSearch(CharSequence text, IntBuffer sa,
 			BackwardsSearchData bsd, String pattern) {
 		int lo = 0;
-		int hi = sa.length;
+		int hi = bsd.length();
 
 		for(int i = pattern.length() - 1; i >= 0; i--) {
-			char c = pattern.charAt(i);
+			int c = bsd.symbol(pattern.charAt(i));
 
-			// Character point greater than any in the string? No matches
-			if(c >= bsd.counts.length)
+			// Character not in the text? No matches
+			if(c < 0)
 				return null;
 
 			lo = bsd.counts[c] + bsd.rank(c, lo);
@@ -96,159 +201,1212 @@ public class Searches {
 		return new Match(lo, hi, pattern.length());
 	}
 
+	/**
+	 * Exact backwards search over a large text, with long suffix array
+	 * positions. The pattern must be encoded as with Utf8Text.
+	 */
+	public static LargeMatch backwardsSearch(LargeSearchData data,
+			String pattern) {
+		long lo = 0;
+		long hi = data.length();
+
+		for(int i = pattern.length() - 1; i >= 0; i--) {
+			int c = data.symbol(pattern.charAt(i));
+
+			// Character not in the text? No matches
+			if(c < 0)
+				return null;
+
+			lo = data.counts[c] + data.rank(c, lo);
+			hi = data.counts[c] + data.rank(c, hi);
+
+			// Range closed, no matches
+			if(lo == hi)
+				return null;
+		}
+
+		return new LargeMatch(lo, hi, pattern.length());
+	}
+
+	
+	public static List<InexactMatch> inexactBinarySearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int limit, String pattern) {
+		return inexactBinarySearch(text, sa, bsd, limit, pattern,
+				SearchBudget.unlimited());
+	}
 	
-	public static List<InexactMatch> inexactBinarySearch(String text, int[] sa,
-			BackwardsSearchData bsd, int limit, String pattern) {
+	/**
+	 * Inexact binary search within the given budget. If it runs out, the
+	 * matches found so far are returned and the budget is marked exhausted.
+	 */
+	public static List<InexactMatch> inexactBinarySearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int limit, String pattern,
+			SearchBudget budget) {
 		List<InexactMatch> results = new ArrayList<>();
 		
-		inexactBinarySearch(text, sa, bsd, pattern, limit, results, 0, 0, 0, 0,
-				sa.length - 1, "");
+		// The edits of the current branch, filled in from the start. Each
+		// edit consumes a pattern character or is an insertion.
+		char[] spec = new char[pattern.length() + limit];
 		
-		return results;
+		budget.start();
+		inexactBinarySearch(text, sa, bsd, pattern, limit, results,
+				new VisitedStates(), lowerBounds(bsd, pattern, false),
+				new SearchStack(), budget, 0, 0, 0, 0, sa.limit() - 1, spec, 0);
+		
+		return reportOnce(results, pattern.length());
 	}
 	
-	private static void inexactBinarySearch(String text, int[] sa,
+	/**
+	 * Search onwards from the given state, depth first with an explicit
+	 * stack. A frame's edit goes at its specIndex - 1, as the edits are filled
+	 * in from the start.
+	 */
+	static void inexactBinarySearch(CharSequence text, IntBuffer sa,
 			BackwardsSearchData bsd, String pattern, int limit,
-			List<InexactMatch> results, int pos, int diff, int length, int lo,
-			int hi, String spec) {
-		// Stop looking if the difference exceeds the limit
-		if(diff > limit)
-			return;
+			List<InexactMatch> results, VisitedStates visited, int[] bounds,
+			SearchStack stack, SearchBudget budget, int startPos, int startDiff,
+			int startLength, int startLo, int startHi, char[] spec,
+			int startSpecEnd) {
+		stack.push(startPos, startDiff, startLength, startLo, startHi,
+				startSpecEnd, SearchStack.NONE);
 		
-		// We've reached end of the pattern, record a match
-		if(pos == pattern.length()) {
-			results.add(new InexactMatch(lo, hi + 1, length, spec));
-			return;
-		}
-		
-		
-		// Process each character in the alphabet separately. The ranges at
-		// next step after a replacement or insertion (or match) may not be
-		// contiguous.
-		for(char c: bsd.alphabet) {
-			// Try finding new bounds
-			int newLo = lo;
-			int newHi = hi;
+		while(!stack.isEmpty()) {
+			stack.pop();
+			int pos = stack.pos();
+			int diff = stack.diff();
+			int length = stack.length();
+			int lo = stack.lo();
+			int hi = stack.hi();
+			int specEnd = stack.specIndex();
 			
-			int lolo = lo;
-			int lohi = hi;
-			while(lohi >= lolo) {
-				int mid = (lolo + lohi) / 2;
-				// For the purposes of inexact searching, there are infinite EOT
-				// characters after end of actual text 
-				char cmid = sa[mid] + length < text.length() ? text.charAt(sa[mid] + length) : EOT;
-	
-				if(cmid == c && (mid == lo || (sa[mid - 1] + length < text.length() ? text.charAt(sa[mid - 1] + length) : EOT) < c)) {
-					newLo = mid;
-					break;
+			if(stack.op() != SearchStack.NONE)
+				spec[specEnd - 1] = stack.op();
+			
+			// Stop looking if the difference exceeds the limit
+			if(diff > limit)
+				continue;
+			
+			// The rest of the pattern can't be matched within the limit
+			if(pos < pattern.length() && diff + bounds[pos] > limit)
+				continue;
+			
+			// Already been here with no more edits
+			if(!visited.visit(pos, lo, hi, length, diff))
+				continue;
+			
+			if(!budget.expand()) {
+				stack.clear();
+				return;
+			}
+			
+			// We've reached end of the pattern, record a match
+			if(pos == pattern.length()) {
+				results.add(new InexactMatch(lo, hi + 1, length,
+						new String(spec, 0, specEnd), diff));
+				if(!budget.report()) {
+					stack.clear();
+					return;
 				}
-	
-				if(cmid < c)
-					lolo = mid + 1;
-				else
-					lohi = mid - 1;
+				continue;
 			}
 			
-			int hilo = lo;
-			int hihi = hi;
-			while(hihi >= hilo) {
-				int mid = (hilo + hihi) / 2;
-				char cmid = sa[mid] + length < text.length() ? text.charAt(sa[mid] + length) : EOT;
-	
-				if(cmid == c && (mid == hi || (sa[mid + 1] + length < text.length() ? text.charAt(sa[mid + 1] + length) : EOT) > c)) {
-					newHi = mid;
-					break;
+			// An insertion next to a deletion is never better than a replacement
+			char last = specEnd > 0 ? spec[specEnd - 1] : 'M';
+			
+			// The branches are pushed in reverse, so they are searched in the
+			// order: each character's match or replacement and insertion in
+			// alphabet order, then deletion.
+			
+			// Deletion
+			if(last != 'I')
+				stack.push(pos + 1, diff + 1, length, lo, hi, specEnd + 1, 'D');
+			
+			// Process each character in the alphabet separately. The ranges at
+			// next step after a replacement or insertion (or match) may not be
+			// contiguous.
+			for(int id = bsd.symbols.length - 1; id >= 0; id--) {
+				char c = bsd.symbols[id];
+				
+				// Try finding new bounds
+				int newLo = lo;
+				int newHi = hi;
+				
+				int lolo = lo;
+				int lohi = hi;
+				while(lohi >= lolo) {
+					int mid = (lolo + lohi) / 2;
+					// For the purposes of inexact searching, there are infinite EOT
+					// characters after end of actual text 
+					char cmid = sa.get(mid) + length < text.length() ? text.charAt(sa.get(mid) + length) : EOT;
+		
+					if(cmid == c && (mid == lo || (sa.get(mid - 1) + length < text.length() ? text.charAt(sa.get(mid - 1) + length) : EOT) < c)) {
+						newLo = mid;
+						break;
+					}
+		
+					if(cmid < c)
+						lolo = mid + 1;
+					else
+						lohi = mid - 1;
+				}
+				
+				int hilo = lo;
+				int hihi = hi;
+				while(hihi >= hilo) {
+					int mid = (hilo + hihi) / 2;
+					char cmid = sa.get(mid) + length < text.length() ? text.charAt(sa.get(mid) + length) : EOT;
+		
+					if(cmid == c && (mid == hi || (sa.get(mid + 1) + length < text.length() ? text.charAt(sa.get(mid + 1) + length) : EOT) > c)) {
+						newHi = mid;
+						break;
+					}
+		
+					if(cmid <= c)
+						hilo = mid + 1;
+					else
+						hihi = mid - 1;
 				}
+				
+				// There are extensions of current prefix with c
+				if(lolo <= lohi && hilo <= hihi) {
+					// Insertion
+					if(last != 'D')
+						stack.push(pos, diff + 1, length + 1, newLo, newHi,
+								specEnd + 1, 'I');
+					
+					// Match
+					if(c == pattern.charAt(pos))
+						stack.push(pos + 1, diff, length + 1, newLo, newHi,
+								specEnd + 1, 'M');
+					// Replacement
+					else
+						stack.push(pos + 1, diff + 1, length + 1, newLo, newHi,
+								specEnd + 1, 'R');
+				}
+			}
+		}
+	}
 	
-				if(cmid <= c)
-					hilo = mid + 1;
-				else
-					hihi = mid - 1;
+	
+	public static List<InexactMatch> inexactBackwardsSearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int limit, String pattern) {
+		return inexactBackwardsSearch(text, sa, bsd, null, limit, pattern,
+				SearchBudget.unlimited());
+	}
+	
+	/**
+	 * Inexact backwards search within the given budget. If it runs out, the
+	 * matches found so far are returned and the budget is marked exhausted.
+	 */
+	public static List<InexactMatch> inexactBackwardsSearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int limit, String pattern,
+			SearchBudget budget) {
+		return inexactBackwardsSearch(text, sa, bsd, null, limit, pattern,
+				budget);
+	}
+	
+	/**
+	 * Inexact backwards search, pruned with lower bounds on the edits the
+	 * rest of the pattern needs, found using the reversed text's data.
+	 */
+	public static List<InexactMatch> inexactBackwardsSearch(CharSequence text,
+			IntBuffer sa, BidirectionalSearchData bid, int limit, String pattern) {
+		return inexactBackwardsSearch(text, sa, bid, limit, pattern,
+				SearchBudget.unlimited());
+	}
+	
+	public static List<InexactMatch> inexactBackwardsSearch(CharSequence text,
+			IntBuffer sa, BidirectionalSearchData bid, int limit, String pattern,
+			SearchBudget budget) {
+		return inexactBackwardsSearch(text, sa, bid.forward,
+				lowerBounds(bid.reverse, pattern, true), limit, pattern, budget);
+	}
+	
+	static List<InexactMatch> inexactBackwardsSearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int[] bounds, int limit,
+			String pattern, SearchBudget budget) {
+		List<InexactMatch> results = new ArrayList<>();
+		
+		// The edits of the current branch, filled in from the end
+		char[] spec = new char[pattern.length() + limit];
+		
+		budget.start();
+		inexactBackwardsSearch(text, sa, bsd, pattern, limit, results,
+				new VisitedStates(), bounds, new SearchStack(), budget,
+				pattern.length() - 1, 0, 0, 0, bsd.length(), spec, spec.length,
+				spec.length);
+		
+		return reportOnce(results, pattern.length());
+	}
+	
+	/**
+	 * Search onwards from the given state, depth first with an explicit
+	 * stack. A frame's edit goes at its specIndex, as the edits are filled in
+	 * from the end.
+	 */
+	static void inexactBackwardsSearch(CharSequence text, IntBuffer sa,
+			BackwardsSearchData bsd, String pattern, int limit,
+			List<InexactMatch> results, VisitedStates visited, int[] bounds,
+			SearchStack stack, SearchBudget budget, int startPos, int startDiff,
+			int startLength, int startLo, int startHi, char[] spec,
+			int startSpecBegin, int specEnd) {
+		stack.push(startPos, startDiff, startLength, startLo, startHi,
+				startSpecBegin, SearchStack.NONE);
+		
+		while(!stack.isEmpty()) {
+			stack.pop();
+			int pos = stack.pos();
+			int diff = stack.diff();
+			int length = stack.length();
+			int lo = stack.lo();
+			int hi = stack.hi();
+			int specBegin = stack.specIndex();
+			
+			if(stack.op() != SearchStack.NONE)
+				spec[specBegin] = stack.op();
+			
+			// Prune branches that exceed the limit
+			if(diff > limit)
+				continue;
+			
+			// The rest of the pattern can't be matched within the limit
+			if(bounds != null && pos >= 0 && diff + bounds[pos] > limit)
+				continue;
+			
+			// Already been here with no more edits
+			if(!visited.visit(pos, lo, hi, length, diff))
+				continue;
+			
+			if(!budget.expand()) {
+				stack.clear();
+				return;
 			}
 			
-			// There are extensions of current prefix with c
-			if(lolo <= lohi && hilo <= hihi) {
-				// Match
-				if(c == pattern.charAt(pos)) {
-					inexactBinarySearch(text, sa, bsd, pattern, limit, results,
-							pos + 1, diff, length + 1, newLo, newHi, spec + "M");
+			// Reaching the start of the pattern => match
+			if(pos < 0) {
+				results.add(new InexactMatch(lo, hi, length,
+						new String(spec, specBegin, specEnd - specBegin), diff));
+				if(!budget.report()) {
+					stack.clear();
+					return;
 				}
-				// Replacement
-				else {
-					inexactBinarySearch(text, sa, bsd, pattern, limit, results,
-							pos + 1, diff + 1, length + 1, newLo, newHi, spec + "R");
+				continue;
+			}
+			
+			// An insertion next to a deletion is never better than a replacement
+			char last = specBegin < specEnd ? spec[specBegin] : 'M';
+			
+			// The branches are pushed in reverse, so they are searched in the
+			// order: each symbol's match or replacement and insertion, then
+			// deletion.
+			
+			// Deletion
+			if(last != 'I')
+				stack.push(pos - 1, diff + 1, length, lo, hi, specBegin - 1, 'D');
+			
+			// For match, replacement and insertion, each character in the
+			// alphabet needs to be processed separately, since their ranges in
+			// the suffix array can be disjoint.
+			// So we need to handle separately each case that it was a
+			// particular character in the current position.
+			for(int c = bsd.sigma() - 1; c >= 0; c--) {
+				int newLo = bsd.counts[c] + bsd.rank(c, lo);
+				int newHi = bsd.counts[c] + bsd.rank(c, hi);
+				
+				// There are some suffixes of the form c + current suffix
+				if(newLo != newHi) {
+					// Insertion
+					if(last != 'D')
+						stack.push(pos, diff + 1, length + 1, newLo, newHi,
+								specBegin - 1, 'I');
+					
+					// Match
+					if(bsd.symbols[c] == pattern.charAt(pos))
+						stack.push(pos - 1, diff, length + 1, newLo, newHi,
+								specBegin - 1, 'M');
+					// Replacement
+					else
+						stack.push(pos - 1, diff + 1, length + 1, newLo, newHi,
+								specBegin - 1, 'R');
 				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * The k best occurrences of the pattern within the limit, by the order of
+	 * reportOnce. The search is best first: the states with d edits are all
+	 * expanded before any with d + 1, a match step staying at d and an edit
+	 * deferring the state to the next round. Once a round ends with k
+	 * occurrences found, the rest would all need more edits, so the search
+	 * stops there.
+	 * 
+	 * The deferred states are no longer on the path of the depth first walk,
+	 * so each keeps a link to its parent's edits instead of a shared buffer.
+	 * 
+	 * @return at most k matches, best first, covering at most k suffix array
+	 * positions.
+	 */
+	public static List<InexactMatch> topBackwardsSearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int limit, int k,
+			String pattern) {
+		return topBackwardsSearch(text, sa, bsd, null, limit, k, pattern);
+	}
+	
+	/**
+	 * Best first search for the k best occurrences, also pruned with lower
+	 * bounds found using the reversed text's data.
+	 */
+	public static List<InexactMatch> topBackwardsSearch(CharSequence text,
+			IntBuffer sa, BidirectionalSearchData bid, int limit, int k,
+			String pattern) {
+		return topBackwardsSearch(text, sa, bid.forward,
+				lowerBounds(bid.reverse, pattern, true), limit, k, pattern);
+	}
+	
+	private static List<InexactMatch> topBackwardsSearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int[] bounds, int limit,
+			int k, String pattern) {
+		int m = pattern.length();
+		List<InexactMatch> found = new ArrayList<>();
+		List<InexactMatch> best = found;
 		
-				// Insertion
-				inexactBinarySearch(text, sa, bsd, pattern, limit, results,
-						pos, diff + 1, length + 1, newLo, newHi, spec + "I");				
+		VisitedStates visited = new VisitedStates();
+		EditTrail trail = new EditTrail();
+		
+		// The states of this round and the next
+		SearchStack current = new SearchStack();
+		SearchStack next = new SearchStack();
+		current.push(m - 1, 0, 0, 0, bsd.length(), trail.add(-1, SearchStack.NONE),
+				SearchStack.NONE);
+		
+		for(int diff = 0; diff <= limit; diff++) {
+			while(!current.isEmpty()) {
+				current.pop();
+				int pos = current.pos();
+				int length = current.length();
+				int lo = current.lo();
+				int hi = current.hi();
+				int edits = current.specIndex();
+				char last = current.op() != SearchStack.NONE ? current.op() : 'M';
+				
+				// The rest of the pattern can't be matched within the limit
+				if(bounds != null && pos >= 0 && diff + bounds[pos] > limit)
+					continue;
+				
+				// Already been here, in this round or an earlier one
+				if(!visited.visit(pos, lo, hi, length, diff))
+					continue;
+				
+				// Reaching the start of the pattern => match
+				if(pos < 0) {
+					found.add(new InexactMatch(lo, hi, length, trail.spec(edits),
+							diff));
+					continue;
+				}
+				
+				// Deletion, and insertion and replacement below, are left for
+				// the next round, if there is one. An insertion next to a
+				// deletion is never better than a replacement.
+				boolean edit = diff < limit;
+				if(edit && last != 'I')
+					next.push(pos - 1, diff + 1, length, lo, hi,
+							trail.add(edits, 'D'), 'D');
+				
+				for(int c = bsd.sigma() - 1; c >= 0; c--) {
+					int newLo = bsd.counts[c] + bsd.rank(c, lo);
+					int newHi = bsd.counts[c] + bsd.rank(c, hi);
+					
+					if(newLo == newHi)
+						continue;
+					
+					if(edit && last != 'D')
+						next.push(pos, diff + 1, length + 1, newLo, newHi,
+								trail.add(edits, 'I'), 'I');
+					
+					if(bsd.symbols[c] == pattern.charAt(pos))
+						current.push(pos - 1, diff, length + 1, newLo, newHi,
+								trail.add(edits, 'M'), 'M');
+					else if(edit)
+						next.push(pos - 1, diff + 1, length + 1, newLo, newHi,
+								trail.add(edits, 'R'), 'R');
+				}
 			}
+			
+			best = reportOnce(found, m);
+			int occurrences = 0;
+			for(InexactMatch match: best)
+				occurrences += match.end - match.begin;
+			if(occurrences >= k)
+				break;
+			
+			SearchStack swap = current;
+			current = next;
+			next = swap;
 		}
 		
-		// Deletion
-		inexactBinarySearch(text, sa, bsd, pattern, limit, results,
-				pos + 1, diff + 1, length, lo, hi, spec + "D");
+		// Take the best k
+		Collections.sort(best, byQuality(m));
+		List<InexactMatch> results = new ArrayList<>();
+		int remaining = k;
+		for(InexactMatch match: best) {
+			if(remaining == 0)
+				break;
+			
+			int end = Math.min(match.end, match.begin + remaining);
+			results.add(new InexactMatch(match.begin, end, match.length,
+					match.spec, match.distance));
+			remaining -= end - match.begin;
+		}
+		
+		return results;
 	}
 	
 	
-	public static List<InexactMatch> inexactBackwardsSearch(String text,
-			int[] sa, BackwardsSearchData bsd, int limit, String pattern) {
+	/**
+	 * Inexact backwards search allowing only replacements, so every match
+	 * has the pattern's length. Each step moves to the next pattern character
+	 * whichever symbol is taken, and once the limit is used up the rest of
+	 * the pattern is searched exactly.
+	 */
+	public static List<InexactMatch> hammingBackwardsSearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int limit, String pattern) {
 		List<InexactMatch> results = new ArrayList<>();
 		
-		inexactBackwardsSearch(text, sa, bsd, pattern, limit, results,
-				pattern.length() - 1, 0, 0, 0, sa.length, "");
+		// Each pattern position has exactly one edit
+		char[] spec = new char[pattern.length()];
 		
-		return results;
+		hammingBackwardsSearch(bsd, pattern, limit, results,
+				pattern.length() - 1, 0, 0, bsd.length(), spec);
+		
+		return reportOnce(results, pattern.length());
 	}
 	
-	private static void inexactBackwardsSearch(String text, int[] sa,
-			BackwardsSearchData bsd, String pattern, int limit,
-			List<InexactMatch> results, int pos, int diff, int length, int lo,
-			int hi, String spec) {
-		// Prune branches that exceed the limit
-		if(diff > limit)
-			return;
+	private static void hammingBackwardsSearch(BackwardsSearchData bsd,
+			String pattern, int limit, List<InexactMatch> results, int pos,
+			int diff, int lo, int hi, char[] spec) {
+		// No replacements left, the rest must match
+		if(diff == limit) {
+			for(; pos >= 0; pos--) {
+				int c = bsd.symbol(pattern.charAt(pos));
+				if(c < 0)
+					return;
+				
+				lo = bsd.counts[c] + bsd.rank(c, lo);
+				hi = bsd.counts[c] + bsd.rank(c, hi);
+				if(lo == hi)
+					return;
+				
+				spec[pos] = 'M';
+			}
+		}
 		
 		// Reaching the start of the pattern => match
 		if(pos < 0) {
-			results.add(new InexactMatch(lo, hi, length, spec));
+			results.add(new InexactMatch(lo, hi, spec.length, new String(spec),
+					diff));
 			return;
 		}
 		
-		// For match, replacement and insertion, each character in the alphabet
-		// needs to be processed separately, since their ranges in the suffix
-		// array can be disjoint.
-		// So we need to handle separately each case that it was a particular
-		// character in the current position.
-		for(char c: bsd.alphabet) {
+		int p = bsd.symbol(pattern.charAt(pos));
+		
+		for(int c = 0; c < bsd.sigma(); c++) {
 			int newLo = bsd.counts[c] + bsd.rank(c, lo);
 			int newHi = bsd.counts[c] + bsd.rank(c, hi);
 			
-			// There are some suffixes of the form c + current suffix
 			if(newLo != newHi) {
-				if(c == pattern.charAt(pos)) {
-					// Match
-					inexactBackwardsSearch(text, sa, bsd, pattern, limit,
-							results, pos - 1, diff, length + 1, newLo, newHi,
-							"M" + spec);
-				}
-				else {
-					// Replacement
-					inexactBackwardsSearch(text, sa, bsd, pattern, limit,
-							results, pos - 1, diff + 1, length + 1, newLo, newHi,
-							"R" + spec);
+				spec[pos] = c == p ? 'M' : 'R';
+				hammingBackwardsSearch(bsd, pattern, limit, results, pos - 1,
+						c == p ? diff : diff + 1, newLo, newHi, spec);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Inexact search on the bidirectional index, finding the same matches as
+	 * inexactBackwardsSearch.
+	 * 
+	 * The pattern is split into limit + 1 pieces. By the pigeonhole principle
+	 * any match has a piece matched without edits, and if piece j is the
+	 * first such, each of the j pieces before it has an edit. So for each j,
+	 * piece j is searched exactly, extended to the right end of the pattern
+	 * with at most limit - j edits, and then to the left end with the rest.
+	 * Starting from an exact piece prunes most of the branching that an
+	 * inexact search from the end of the pattern does at its first steps.
+	 */
+	public static List<InexactMatch> bidirectionalSearch(CharSequence text,
+			IntBuffer sa, BidirectionalSearchData bid, int limit,
+			String pattern) {
+		int m = pattern.length();
+		
+		// With fewer characters than pieces there is nothing to split
+		if(limit >= m)
+			return inexactBackwardsSearch(text, sa, bid, limit, pattern);
+		
+		List<InexactMatch> results = new ArrayList<>();
+		
+		// The leftwards search from a state is the same whichever piece it
+		// started from, the rightwards one isn't
+		VisitedStates leftVisited = new VisitedStates();
+		SearchStack leftStack = new SearchStack();
+		
+		// Lower bounds on the edits for the rest of the pattern in each
+		// direction
+		int[] leftBounds = lowerBounds(bid.reverse, pattern, true);
+		int[] rightBounds = lowerBounds(bid.forward, pattern, false);
+		
+		// The edits of the current branch. The exact piece goes in the
+		// middle, with room for the edits on either side of it, including a
+		// step that is then pruned for exceeding the limit.
+		char[] spec = new char[2 * (m + limit) + 1];
+		int middle = m + limit;
+		
+		for(int j = 0; j <= limit; j++) {
+			int begin = j * m / (limit + 1);
+			int end = (j + 1) * m / (limit + 1);
+			String piece = pattern.substring(begin, end);
+			
+			// Ranges of the piece in the text and of its reverse in the
+			// reversed text. Backwards search doesn't use the text or the
+			// suffix array, so none are given for the reversed text.
+			Match forward = backwardsSearch(text, sa, bid.forward, piece);
+			if(forward == null)
+				continue;
+			Match reverse = backwardsSearch(null, null, bid.reverse,
+					new StringBuilder(piece).reverse().toString());
+			
+			Arrays.fill(spec, middle, middle + piece.length(), 'M');
+			
+			bidirectionalSearch(text, sa, bid, pattern, limit, limit - j,
+					results, new VisitedStates(), leftVisited, leftStack,
+					rightBounds, leftBounds, begin - 1, end, 0,
+					piece.length(), forward.begin, forward.end, reverse.begin,
+					reverse.end, spec, middle, middle + piece.length());
+		}
+		
+		return reportOnce(results, m);
+	}
+	
+	/**
+	 * Extend the match rightwards from pattern position pos, then continue
+	 * leftwards from leftPos with a plain inexact backwards search.
+	 */
+	private static void bidirectionalSearch(CharSequence text, IntBuffer sa,
+			BidirectionalSearchData bid, String pattern, int limit,
+			int rightLimit, List<InexactMatch> results, VisitedStates visited,
+			VisitedStates leftVisited, SearchStack leftStack, int[] bounds,
+			int[] leftBounds,
+			int leftPos, int pos, int diff, int length, int lo, int hi,
+			int rlo, int rhi, char[] spec, int specBegin, int specEnd) {
+		// Prune branches that exceed the limit for the right side
+		if(diff > rightLimit)
+			return;
+		
+		// The rest of the right side can't be matched within its limit
+		if(pos < pattern.length() && diff + bounds[pos] > rightLimit)
+			return;
+		
+		// Already been here with no more edits. The text range determines
+		// the reversed text range, so it needn't be part of the state.
+		if(!visited.visit(pos, lo, hi, length, diff))
+			return;
+		
+		// Reaching the end of the pattern, continue towards the start
+		if(pos == pattern.length())
+			inexactBackwardsSearch(text, sa, bid.forward, pattern, limit,
+					results, leftVisited, leftBounds, leftStack,
+					SearchBudget.unlimited(), leftPos, diff, length, lo, hi, spec,
+					specBegin, specEnd);
+		
+		// An insertion next to a deletion is never better than a replacement
+		char last = spec[specEnd - 1];
+		
+		// The occurrences of the current string followed by c are found from
+		// the reversed text's range. In the text's range they are ordered by
+		// c, so they follow those of the characters smaller than c.
+		int next = lo;
+		for(int c = 0; c < bid.sigma(); c++) {
+			int newRlo = bid.reverse.counts[c] + bid.reverse.rank(c, rlo);
+			int newRhi = bid.reverse.counts[c] + bid.reverse.rank(c, rhi);
+			int newLo = next;
+			int newHi = next + (newRhi - newRlo);
+			next = newHi;
+			
+			// There are some suffixes of the form current string + c
+			if(newLo != newHi) {
+				if(pos < pattern.length()) {
+					if(bid.forward.symbols[c] == pattern.charAt(pos)) {
+						// Match
+						spec[specEnd] = 'M';
+						bidirectionalSearch(text, sa, bid, pattern, limit,
+								rightLimit, results, visited, leftVisited, leftStack,
+								bounds, leftBounds, leftPos, pos + 1, diff,
+								length + 1, newLo, newHi, newRlo, newRhi, spec,
+								specBegin, specEnd + 1);
+					}
+					else {
+						// Replacement
+						spec[specEnd] = 'R';
+						bidirectionalSearch(text, sa, bid, pattern, limit,
+								rightLimit, results, visited, leftVisited, leftStack,
+								bounds, leftBounds, leftPos, pos + 1, diff + 1,
+								length + 1, newLo, newHi, newRlo, newRhi, spec,
+								specBegin, specEnd + 1);
+					}
 				}
 				
 				// Insertion
-				inexactBackwardsSearch(text, sa, bsd, pattern, limit,
-						results, pos, diff + 1, length + 1, newLo, newHi,
-						"I" + spec);
+				if(last != 'D') {
+					spec[specEnd] = 'I';
+					bidirectionalSearch(text, sa, bid, pattern, limit,
+							rightLimit, results, visited, leftVisited, leftStack,
+							bounds, leftBounds, leftPos, pos, diff + 1, length + 1,
+							newLo, newHi, newRlo, newRhi, spec, specBegin,
+							specEnd + 1);
+				}
 			}
 		}
 		
 		// Deletion
-		inexactBackwardsSearch(text, sa, bsd, pattern, limit,
-				results, pos - 1, diff + 1, length, lo, hi,
-				"D" + spec);
+		if(pos < pattern.length() && last != 'I') {
+			spec[specEnd] = 'D';
+			bidirectionalSearch(text, sa, bid, pattern, limit, rightLimit,
+					results, visited, leftVisited, leftStack, bounds, leftBounds,
+					leftPos, pos + 1, diff + 1, length, lo, hi, rlo, rhi, spec,
+					specBegin, specEnd + 1);
+		}
+	}
+	
+	/**
+	 * Inexact search computing edit distances instead of branching on edit
+	 * operations, finding the same matches as inexactBackwardsSearch.
+	 * 
+	 * The strings occurring in the text are enumerated from their ends by
+	 * backwards steps, as a walk down a trie of the reversed text. Each step
+	 * adds a row to the edit distance table between the reversed string and
+	 * the reversed pattern, and the walk stops where a whole row exceeds the
+	 * limit. Only the cells within limit of the diagonal can be within the
+	 * limit, so only those are computed.
+	 */
+	public static List<InexactMatch> dpBackwardsSearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int limit, String pattern) {
+		return dpBackwardsSearch(text, sa, bsd, null, limit, pattern);
+	}
+	
+	/**
+	 * Edit distance table search, also stopping where each cell of the row
+	 * plus the lower bound for the rest of the pattern is over the limit.
+	 */
+	public static List<InexactMatch> dpBackwardsSearch(CharSequence text,
+			IntBuffer sa, BidirectionalSearchData bid, int limit, String pattern) {
+		return dpBackwardsSearch(text, sa, bid.forward,
+				lowerBounds(bid.reverse, pattern, true), limit, pattern);
+	}
+	
+	private static List<InexactMatch> dpBackwardsSearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int[] bounds, int limit,
+			String pattern) {
+		int m = pattern.length();
+		int maxLength = m + limit;
+		
+		// Symbol ids of the reversed pattern, -1 for characters not in the
+		// text
+		int[] reversed = new int[m];
+		for(int i = 0; i < m; i++)
+			reversed[i] = bsd.symbol(pattern.charAt(m - 1 - i));
+		
+		// Least edits for the rest of the reversed pattern after i characters
+		int[] remaining = new int[m + 1];
+		if(bounds != null)
+			for(int i = 0; i < m; i++)
+				remaining[i] = bounds[m - 1 - i];
+		
+		// Rows for each string length, and the symbols of the string
+		// currently walked, last first
+		int[][] table = new int[maxLength + 1][m + 1];
+		int[] path = new int[maxLength + 1];
+		
+		for(int i = 0; i <= m; i++)
+			table[0][i] = Math.min(i, limit + 1);
+		
+		List<InexactMatch> results = new ArrayList<>();
+		dpBackwardsSearch(bsd, reversed, remaining, limit, results, table, path,
+				0, 0, bsd.length());
+		
+		return reportOnce(results, m);
+	}
+	
+	private static void dpBackwardsSearch(BackwardsSearchData bsd,
+			int[] pattern, int[] remaining, int limit, List<InexactMatch> results,
+			int[][] table, int[] path, int length, int lo, int hi) {
+		int m = pattern.length;
+		
+		// The string matches if the pattern's start is aligned to its start.
+		// An insertion there isn't allowed, as in inexactBackwardsSearch.
+		int distance = matchDistance(pattern, limit, table, path, length);
+		if(distance <= limit)
+			results.add(new InexactMatch(lo, hi, length,
+					traceback(pattern, limit, table, path, length, distance),
+					distance));
+		
+		if(length == table.length - 1)
+			return;
+		
+		int row = length + 1;
+		int first = Math.max(0, row - limit);
+		int last = Math.min(m, row + limit);
+		
+		for(int c = 0; c < bsd.sigma(); c++) {
+			int newLo = bsd.counts[c] + bsd.rank(c, lo);
+			int newHi = bsd.counts[c] + bsd.rank(c, hi);
+			
+			if(newLo == newHi)
+				continue;
+			
+			path[row] = c;
+			
+			// Fill in the band of the row. The cells just outside it are read
+			// by this row and the next, so they are set to over the limit.
+			int[] prev = table[length];
+			int[] cur = table[row];
+			int min = limit + 1;
+			
+			if(first > 0)
+				cur[first - 1] = limit + 1;
+			for(int i = first; i <= last; i++) {
+				int value;
+				if(i == 0) {
+					value = row;
+				}
+				else {
+					int diagonal = prev[i - 1] + (pattern[i - 1] == c ? 0 : 1);
+					int insertion = prev[i] + 1;
+					int deletion = cur[i - 1] + 1;
+					value = Math.min(diagonal, Math.min(insertion, deletion));
+				}
+				
+				cur[i] = Math.min(value, limit + 1);
+				min = Math.min(min, cur[i] + remaining[i]);
+			}
+			if(last < m)
+				cur[last + 1] = limit + 1;
+			
+			// Every longer string needs more edits than the limit
+			if(min > limit)
+				continue;
+			
+			dpBackwardsSearch(bsd, pattern, remaining, limit, results, table,
+					path, row, newLo, newHi);
+		}
+	}
+	
+	/**
+	 * The edits needed to transform the pattern into the string of the given
+	 * length on the path, without inserting before the pattern.
+	 */
+	private static int matchDistance(int[] pattern, int limit, int[][] table,
+			int[] path, int length) {
+		int m = pattern.length;
+		
+		if(m == 0)
+			return length == 0 ? 0 : Integer.MAX_VALUE;
+		
+		// Ending the reversed alignment with a replacement or a deletion
+		int distance = cell(table, limit, length, m - 1) + 1;
+		if(length > 0)
+			distance = Math.min(distance, cell(table, limit, length - 1, m - 1)
+					+ (pattern[m - 1] == path[length] ? 0 : 1));
+		
+		return distance;
+	}
+	
+	/**
+	 * Recover the edits of a match from the table. The table is of the
+	 * reversed strings, so it is traced back from its end to get the edits
+	 * in order from the pattern's start.
+	 */
+	private static String traceback(int[] pattern, int limit, int[][] table,
+			int[] path, int length, int distance) {
+		int m = pattern.length;
+		StringBuilder spec = new StringBuilder();
+		
+		int row = length;
+		int i = m;
+		int value = distance;
+		boolean first = true;
+		
+		while(row > 0 || i > 0) {
+			int cost = row > 0 && i > 0 && pattern[i - 1] == path[row] ? 0 : 1;
+			
+			if(row > 0 && i > 0 && value == cell(table, limit, row - 1, i - 1) + cost) {
+				spec.append(cost == 0 ? 'M' : 'R');
+				row -= 1;
+				i -= 1;
+			}
+			else if(i > 0 && value == cell(table, limit, row, i - 1) + 1) {
+				spec.append('D');
+				i -= 1;
+			}
+			else {
+				// Only allowed after the first step, see matchDistance
+				assert !first;
+				spec.append('I');
+				row -= 1;
+			}
+			
+			value = cell(table, limit, row, i);
+			first = false;
+		}
+		
+		return spec.toString();
+	}
+	
+	/**
+	 * A cell of the edit distance table. Those outside the computed band are
+	 * left with values of other strings, but are known to be over the limit.
+	 */
+	private static int cell(int[][] table, int limit, int row, int i) {
+		return Math.abs(row - i) > limit ? limit + 1 : table[row][i];
+	}
+
+
+	/**
+	 * Seed and verify search, for long patterns with few edits allowed. The
+	 * pattern is split into limit + 1 pieces, at least one of which a match
+	 * contains unedited. Each occurrence of each piece, found by backwards
+	 * search, places the pattern in a window of the text, which is checked
+	 * with Myers' bit-parallel matcher. Windows with a match then have their
+	 * possible starts aligned to the pattern one by one.
+	 *
+	 * Needs the text positions of the suffixes, from the suffix array if it's
+	 * given and otherwise from the sampled one. The text is read cyclically,
+	 * so the matches are the same as inexactBackwardsSearch's.
+	 */
+	public static List<InexactMatch> seedSearch(CharSequence text,
+			IntBuffer sa, BackwardsSearchData bsd, int limit, String pattern) {
+		int m = pattern.length();
+		int n = bsd.length();
+
+		// Too short to leave any piece unedited
+		if(limit >= m)
+			return inexactBackwardsSearch(text, sa, bsd, limit, pattern);
+
+		MyersMatcher matcher = new MyersMatcher(bsd, pattern);
+		int[][] table = new int[m + limit + 1][m + 1];
+
+		// Pattern starts whose windows, and starts that, have been checked
+		Set<Integer> windows = new HashSet<>();
+		Set<Integer> starts = new HashSet<>();
+
+		// Suffix array ranges of the matched strings
+		Map<String, Match> ranges = new HashMap<>();
+
+		List<InexactMatch> results = new ArrayList<>();
+
+		for(int j = 0; j <= limit; j++) {
+			int begin = j * m / (limit + 1);
+			int end = (j + 1) * m / (limit + 1);
+
+			Match seed = backwardsSearch(text, sa, bsd,
+					pattern.substring(begin, end));
+			if(seed == null)
+				continue;
+
+			for(int row = seed.begin; row < seed.end; row++) {
+				int position = sa != null ? sa.get(row) : bsd.locate(row);
+				int start = position - begin;
+
+				// A match with this occurrence unedited starts within limit
+				// of start, and is at most limit longer than the pattern
+				if(!windows.add(start)
+						|| matcher.minDistance(text, start - limit,
+								start + m + limit) > limit)
+					continue;
+
+				for(int s = start - limit; s <= start + limit; s++) {
+					int from = ((s % n) + n) % n;
+					if(!starts.add(from))
+						continue;
+
+					int length = alignStart(text, pattern, limit, table, from);
+					if(length < 0)
+						continue;
+
+					String matched = cyclicSubstring(text, from, length);
+					Match range = ranges.get(matched);
+					if(range == null) {
+						range = backwardsSearch(text, sa, bsd, matched);
+						ranges.put(matched, range);
+					}
+
+					results.add(new InexactMatch(range.begin, range.end, length,
+							alignment(text, pattern, limit, table, from, length),
+							table[length][m]));
+				}
+			}
+		}
+
+		return reportOnce(results, m);
+	}
+
+	/**
+	 * Fill in the edit distance table between the pattern and the strings
+	 * starting at the text position, without inserting before the pattern.
+	 *
+	 * @return the length of the best string within the limit, as chosen by
+	 * reportOnce, or -1 if there is none.
+	 */
+	private static int alignStart(CharSequence text, String pattern, int limit,
+			int[][] table, int start) {
+		int m = pattern.length();
+		int n = text.length();
+		int best = -1;
+
+		for(int row = 0; row < table.length; row++) {
+			int first = Math.max(0, row - limit);
+			int last = Math.min(m, row + limit);
+			int min = limit + 1;
+
+			for(int i = first; i <= last; i++) {
+				int value;
+				if(i == 0) {
+					value = row == 0 ? 0 : limit + 1;
+				}
+				else if(row == 0) {
+					value = i;
+				}
+				else {
+					char c = text.charAt((start + row - 1) % n);
+					int diagonal = cell(table, limit, row - 1, i - 1)
+							+ (pattern.charAt(i - 1) == c ? 0 : 1);
+					int insertion = cell(table, limit, row - 1, i) + 1;
+					int deletion = cell(table, limit, row, i - 1) + 1;
+					value = Math.min(diagonal, Math.min(insertion, deletion));
+				}
+
+				table[row][i] = Math.min(value, limit + 1);
+				min = Math.min(min, table[row][i]);
+			}
+
+			if(last == m && table[row][m] <= limit
+					&& (best < 0 || table[row][m] < table[best][m]
+							|| (table[row][m] == table[best][m]
+									&& Math.abs(row - m) < Math.abs(best - m))))
+				best = row;
+
+			// Every longer string needs more edits than the limit
+			if(min > limit)
+				break;
+		}
+
+		return best;
+	}
+
+	/**
+	 * Recover the edits of the alignment found by alignStart.
+	 */
+	private static String alignment(CharSequence text, String pattern,
+			int limit, int[][] table, int start, int length) {
+		int n = text.length();
+		StringBuilder spec = new StringBuilder();
+
+		int row = length;
+		int i = pattern.length();
+
+		while(row > 0 || i > 0) {
+			int value = table[row][i];
+			int cost = row > 0 && i > 0
+					&& pattern.charAt(i - 1) == text.charAt((start + row - 1) % n)
+					? 0 : 1;
+
+			if(row > 0 && i > 0 && value == cell(table, limit, row - 1, i - 1) + cost) {
+				spec.append(cost == 0 ? 'M' : 'R');
+				row -= 1;
+				i -= 1;
+			}
+			else if(i > 0 && value == cell(table, limit, row, i - 1) + 1) {
+				spec.append('D');
+				i -= 1;
+			}
+			else {
+				spec.append('I');
+				row -= 1;
+			}
+		}
+
+		return spec.reverse().toString();
+	}
+
+	private static String cyclicSubstring(CharSequence text, int start,
+			int length) {
+		int n = text.length();
+		StringBuilder sb = new StringBuilder(length);
+
+		for(int i = 0; i < length; i++)
+			sb.append(text.charAt((start + i) % n));
+
+		return sb.toString();
+	}
+
+	
+	/**
+	 * Lower bounds on the edits needed to match each prefix, pattern[0, i],
+	 * or each suffix, pattern[i, m), of the pattern, as in BWA. The pattern is
+	 * split greedily into pieces that occur in the text, and each character
+	 * where one piece ends and the next starts needs at least one edit.
+	 * 
+	 * Checking whether a piece occurs means extending it at its far end, so
+	 * the prefix bounds are found with the reversed text's data and the
+	 * suffix bounds with the text's.
+	 */
+	static int[] lowerBounds(BackwardsSearchData bsd, String pattern,
+			boolean prefixes) {
+		int m = pattern.length();
+		int[] bounds = new int[m];
+		
+		int lo = 0;
+		int hi = bsd.length();
+		int edits = 0;
+		
+		for(int k = 0; k < m; k++) {
+			int i = prefixes ? k : m - 1 - k;
+			char ch = pattern.charAt(i);
+			
+			// Binary search lets EOT match past the end of the text, so it
+			// can't be counted on to end a piece
+			if(ch == EOT) {
+				lo = 0;
+				hi = bsd.length();
+			}
+			else {
+				int c = bsd.symbol(ch);
+				if(c >= 0) {
+					lo = bsd.counts[c] + bsd.rank(c, lo);
+					hi = bsd.counts[c] + bsd.rank(c, hi);
+				}
+				
+				// Not in the text, start a new piece after this character
+				if(c < 0 || lo == hi) {
+					edits += 1;
+					lo = 0;
+					hi = bsd.length();
+				}
+			}
+			
+			bounds[i] = edits;
+		}
+		
+		return bounds;
+	}
+	
+	/**
+	 * Report each suffix array position once, as part of its best match: the
+	 * one with the fewest edits, then the length closest to the pattern's,
+	 * then the shortest. A match whose range is partly taken by better ones
+	 * is split into the remaining pieces. The results are in suffix array
+	 * order.
+	 */
+	static List<InexactMatch> reportOnce(List<InexactMatch> matches,
+			int patternLength) {
+		List<InexactMatch> sorted = new ArrayList<>(matches);
+		Collections.sort(sorted, byQuality(patternLength));
+		
+		// Taken ranges, begin -> end
+		TreeMap<Integer, Integer> taken = new TreeMap<>();
+		List<InexactMatch> results = new ArrayList<>();
+		
+		for(InexactMatch match: sorted) {
+			int begin = match.begin;
+			
+			while(begin < match.end) {
+				// Skip over a taken range covering begin
+				Map.Entry<Integer, Integer> before = taken.floorEntry(begin);
+				if(before != null && before.getValue() > begin) {
+					begin = before.getValue();
+					continue;
+				}
+				
+				// Free up to the next taken range
+				Integer next = taken.higherKey(begin);
+				int end = next == null ? match.end : Math.min(next, match.end);
+				
+				results.add(new InexactMatch(begin, end, match.length,
+						match.spec, match.distance));
+				taken.put(begin, end);
+				begin = end;
+			}
+		}
+		
+		Collections.sort(results, new Comparator<InexactMatch>() {
+			@Override
+			public int compare(InexactMatch a, InexactMatch b) {
+				return Integer.compare(a.begin, b.begin);
+			}
+		});
+		
+		return results;
+	}
+	
+	/**
+	 * Orders matches best first: the fewest edits, then the length closest
+	 * to the pattern's, then the shortest, then by suffix array position.
+	 */
+	private static Comparator<InexactMatch> byQuality(final int patternLength) {
+		return new Comparator<InexactMatch>() {
+			@Override
+			public int compare(InexactMatch a, InexactMatch b) {
+				if(a.distance != b.distance)
+					return Integer.compare(a.distance, b.distance);
+				
+				int aOff = Math.abs(a.length - patternLength);
+				int bOff = Math.abs(b.length - patternLength);
+				if(aOff != bOff)
+					return Integer.compare(aOff, bOff);
+				
+				if(a.length != b.length)
+					return Integer.compare(a.length, b.length);
+				
+				return Integer.compare(a.begin, b.begin);
+			}
+		};
+	}
+	
+	
+	/**
+	 * The edits of the states of a search that aren't walked depth first.
+	 * Each state adds its edit with a link to its parent's, so the edits of
+	 * a match are read by following the links.
+	 */
+	private static class EditTrail {
+		private int[] parents = new int[64];
+		private char[] ops = new char[64];
+		private int size;
+		
+		/**
+		 * @return the id of the new state's edits.
+		 */
+		int add(int parent, char op) {
+			if(this.size == this.ops.length) {
+				this.parents = Arrays.copyOf(this.parents, 2 * this.size);
+				this.ops = Arrays.copyOf(this.ops, 2 * this.size);
+			}
+			
+			this.parents[this.size] = parent;
+			this.ops[this.size] = op;
+			return this.size++;
+		}
+		
+		/**
+		 * The edits leading to the state. A backwards search edits the
+		 * pattern from its end, so the latest edit is the first.
+		 */
+		String spec(int id) {
+			StringBuilder sb = new StringBuilder();
+			for(int i = id; this.ops[i] != SearchStack.NONE; i = this.parents[i])
+				sb.append(this.ops[i]);
+			return sb.toString();
+		}
 	}
 }
@@ -0,0 +1,92 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * UTF-8 encoded text presented as a sequence of its bytes, so that the
+ * searches can run on it unchanged: each byte is one char in the range
+ * [0, 255]. Patterns must be converted with encode() to match.
+ *
+ * Positions and lengths in this text are byte offsets. Matching is also done
+ * on bytes, so for inexact searches a non-ASCII character counts as several
+ * edits.
+ */
+public class Utf8Text implements CharSequence {
+
+	protected final ByteBuffer bytes;
+
+
+	public Utf8Text(ByteBuffer bytes) {
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Encode a pattern into the form matching this kind of text, that is
+	 * one char per UTF-8 byte.
+	 */
+	public static String encode(String pattern) {
+		return new String(pattern.getBytes(StandardCharsets.UTF_8),
+				StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public int length() {
+		return this.bytes.limit();
+	}
+
+	@Override
+	public char charAt(int index) {
+		return (char)(this.bytes.get(index) & 0xff);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		ByteBuffer dup = this.bytes.duplicate();
+		dup.position(start);
+		dup.limit(end);
+		return new Utf8Text(dup.slice());
+	}
+
+	/**
+	 * Convert UTF-16 char offsets into the decoded text to byte offsets into
+	 * this text, in one pass over the text.
+	 */
+	public int[] toByteOffsets(int[] charOffsets) {
+		int[] sorted = Arrays.copyOf(charOffsets, charOffsets.length);
+		Arrays.sort(sorted);
+		int[] converted = new int[sorted.length];
+
+		int next = 0;
+		int chars = 0;
+		for(int i = 0; i < length() && next < sorted.length; i++) {
+			int b = this.bytes.get(i) & 0xff;
+
+			// Continuation bytes don't start a char
+			if((b & 0xc0) == 0x80)
+				continue;
+
+			while(next < sorted.length && sorted[next] <= chars)
+				converted[next++] = i;
+
+			// Four byte sequences are a surrogate pair in UTF-16
+			chars += b >= 0xf0 ? 2 : 1;
+		}
+		while(next < sorted.length)
+			converted[next++] = length();
+
+		int[] result = new int[charOffsets.length];
+		for(int i = 0; i < charOffsets.length; i++)
+			result[i] = converted[Arrays.binarySearch(sorted, charOffsets[i])];
+
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		ByteBuffer dup = this.bytes.duplicate();
+		dup.rewind();
+		return StandardCharsets.UTF_8.decode(dup).toString();
+	}
+}
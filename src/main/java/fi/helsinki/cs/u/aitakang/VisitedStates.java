@@ -0,0 +1,113 @@
+package fi.helsinki.cs.u.aitakang;
+
+import java.util.Arrays;
+
+/**
+ * The fewest edits with which each state of an inexact search has been
+ * reached. A state is a pattern position, a suffix array range and the
+ * length of the matched string. The search onwards from a state doesn't
+ * depend on how it was reached, so reaching it again with at least as many
+ * edits needs no expanding.
+ *
+ * Open addressing with linear probing over int arrays, so that recording a
+ * state allocates nothing.
+ */
+public class VisitedStates {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/** pos, lo, hi, length of each slot's state. */
+	private int[] keys;
+
+	/** Edits of each slot's state, or -1 if the slot is empty. */
+	private int[] diffs;
+
+	private int size;
+
+
+	public VisitedStates() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Record reaching the state with the given number of edits.
+	 *
+	 * @return true if the state should be expanded, that is, it hasn't been
+	 * reached before with as few edits.
+	 */
+	public boolean visit(int pos, int lo, int hi, int length, int diff) {
+		int mask = this.diffs.length - 1;
+		int slot = hash(pos, lo, hi, length) & mask;
+
+		while(this.diffs[slot] >= 0) {
+			int k = 4 * slot;
+			if(this.keys[k] == pos && this.keys[k + 1] == lo
+					&& this.keys[k + 2] == hi && this.keys[k + 3] == length) {
+				if(this.diffs[slot] <= diff)
+					return false;
+
+				this.diffs[slot] = diff;
+				return true;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+
+		put(slot, pos, lo, hi, length, diff);
+
+		this.size += 1;
+		if(2 * this.size > this.diffs.length)
+			grow();
+
+		return true;
+	}
+
+
+	private void allocate(int capacity) {
+		this.keys = new int[4 * capacity];
+		this.diffs = new int[capacity];
+		Arrays.fill(this.diffs, -1);
+	}
+
+	private void put(int slot, int pos, int lo, int hi, int length, int diff) {
+		int k = 4 * slot;
+		this.keys[k] = pos;
+		this.keys[k + 1] = lo;
+		this.keys[k + 2] = hi;
+		this.keys[k + 3] = length;
+		this.diffs[slot] = diff;
+	}
+
+	/**
+	 * Double the capacity, rehashing the states.
+	 */
+	private void grow() {
+		int[] oldKeys = this.keys;
+		int[] oldDiffs = this.diffs;
+
+		allocate(2 * oldDiffs.length);
+		int mask = this.diffs.length - 1;
+
+		for(int i = 0; i < oldDiffs.length; i++) {
+			if(oldDiffs[i] < 0)
+				continue;
+
+			int k = 4 * i;
+			int slot = hash(oldKeys[k], oldKeys[k + 1], oldKeys[k + 2],
+					oldKeys[k + 3]) & mask;
+			while(this.diffs[slot] >= 0)
+				slot = (slot + 1) & mask;
+
+			put(slot, oldKeys[k], oldKeys[k + 1], oldKeys[k + 2], oldKeys[k + 3],
+					oldDiffs[i]);
+		}
+	}
+
+	private static int hash(int pos, int lo, int hi, int length) {
+		int h = pos;
+		h = h * 0x9e3779b9 + lo;
+		h = h * 0x9e3779b9 + hi;
+		h = h * 0x9e3779b9 + length;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,88 @@
+package fi.helsinki.cs.u.aitakang;
+
+/**
+ * A wavelet tree over a sequence of symbol ids 0..sigma-1, answering rank
+ * queries in O(log sigma) time without scanning the sequence.
+ *
+ * The tree is stored levelwise, without node
+ * pointers (the "wavelet matrix" layout): level L holds bit L of each code,
+ * counting from the most significant one, with the sequence stably
+ * partitioned by the bits of the levels above it. The zeros of a level then
+ * precede its ones on the next level.
+ */
+public class WaveletTree {
+
+	/** Per level code bits. */
+	protected final RankBitVector[] levels;
+
+	/** Number of zero bits on each level. */
+	protected final int[] zeros;
+
+
+	/**
+	 * @param codes The sequence. Used as work space, so its contents are
+	 *        overwritten.
+	 * @param sigma Number of distinct symbols.
+	 */
+	public WaveletTree(int[] codes, int sigma) {
+		int depth = Math.max(1, 32 - Integer.numberOfLeadingZeros(sigma - 1));
+		this.levels = new RankBitVector[depth];
+		this.zeros = new int[depth];
+
+		// Build each level, then stably partition the codes by that level's bit
+		int[] next = new int[codes.length];
+		for(int l = 0; l < depth; l++) {
+			int shift = depth - 1 - l;
+			RankBitVector level = new RankBitVector(codes.length);
+
+			int z = 0;
+			for(int i = 0; i < codes.length; i++) {
+				if(((codes[i] >>> shift) & 1) == 0)
+					z += 1;
+				else
+					level.set(i);
+			}
+			level.seal();
+
+			int zi = 0;
+			int oi = z;
+			for(int i = 0; i < codes.length; i++) {
+				if(((codes[i] >>> shift) & 1) == 0)
+					next[zi++] = codes[i];
+				else
+					next[oi++] = codes[i];
+			}
+
+			int[] tmp = codes;
+			codes = next;
+			next = tmp;
+
+			this.levels[l] = level;
+			this.zeros[l] = z;
+		}
+	}
+
+	/**
+	 * The number of occurrences of the symbol in the sequence before
+	 * position N.
+	 */
+	public int rank(int code, int n) {
+		// Track both the start of the code's block and the query position
+		// down through the levels.
+		int start = 0;
+		for(int l = 0; l < this.levels.length; l++) {
+			RankBitVector level = this.levels[l];
+
+			if(((code >>> (this.levels.length - 1 - l)) & 1) == 0) {
+				start = level.rank0(start);
+				n = level.rank0(n);
+			}
+			else {
+				start = this.zeros[l] + level.rank1(start);
+				n = this.zeros[l] + level.rank1(n);
+			}
+		}
+
+		return n - start;
+	}
+}
@@ -20,6 +20,7 @@ public class BackwardsSearchDataTest {
 	private String textRand;
 	private int[] saRand;
 	private BackwardsSearchData bsdRand;
+	private BackwardsSearchData waveletRand;
 	
 	@Before
 	public void setUp() throws Exception {
@@ -44,6 +45,8 @@ public class BackwardsSearchDataTest {
 		this.saRand = new int[this.textRand.length()];
 		sais.suffixsort(this.textRand, this.saRand, this.textRand.length());
 		this.bsdRand = new BackwardsSearchData(this.textRand, this.saRand);
+		this.waveletRand = new BackwardsSearchData(this.textRand, this.saRand,
+				BackwardsSearchData.RankBackend.wavelet);
 	}
 
 	@After
@@ -55,29 +58,46 @@ public class BackwardsSearchDataTest {
 		this.textRand = null;
 		this.saRand = null;
 		this.bsdRand = null;
+		this.waveletRand = null;
+	}
+	
+	@Test
+	public void testSymbols() {
+		// Symbol ids are dense and ordered like the characters
+		assertThat(this.bsdA.sigma(), is(2));
+		assertThat(this.bsdA.symbol(Searches.EOT), is(0));
+		assertThat(this.bsdA.symbol('a'), is(1));
+		assertThat(this.bsdA.symbol('b'), is(-1));
+		
+		for(int id = 0; id < this.bsdRand.sigma(); id++)
+			assertThat(this.bsdRand.symbol(this.bsdRand.symbols[id]), is(id));
 	}
 	
 	@Test
 	public void testCounts() {
-		for(char c = 0; c < this.bsdA.counts.length; c++) {
+		assertThat(this.bsdA.counts.length, is(this.bsdA.sigma()));
+		for(int id = 0; id < this.bsdA.counts.length; id++) {
+			char c = this.bsdA.symbols[id];
 			int count = 0;
 			for(char c2: this.textA.toCharArray()) {
 				if(c2 < c)
 					count += 1;
 			}
 			
-			assertThat(this.bsdA.counts[c], is(count));
+			assertThat(this.bsdA.counts[id], is(count));
 		}
 		
 
-		for(char c = 0; c < this.bsdRand.counts.length; c++) {
+		assertThat(this.bsdRand.counts.length, is(this.bsdRand.sigma()));
+		for(int id = 0; id < this.bsdRand.counts.length; id++) {
+			char c = this.bsdRand.symbols[id];
 			int count = 0;
 			for(char c2: this.textRand.toCharArray()) {
 				if(c2 < c)
 					count += 1;
 			}
 			
-			assertThat(this.bsdRand.counts[c], is(count));
+			assertThat(this.bsdRand.counts[id], is(count));
 		}
 	}
 
@@ -87,10 +107,10 @@ public class BackwardsSearchDataTest {
 			for(int n = 0; n < this.textA.length(); n++) {
 				int naive = 0;
 				for(int i = 0; i < n; i++)
-					if(this.bsdA.bwt[i] == c)
+					if(this.bsdA.symbols[this.bsdA.bwtSymbol(i)] == c)
 						naive += 1;
 				
-				assertThat(String.format("rank(%c, %d)", c, n), this.bsdA.rank(c, n), is(naive));
+				assertThat(String.format("rank(%c, %d)", c, n), this.bsdA.rank(this.bsdA.symbol(c), n), is(naive));
 			}
 		}
 		
@@ -98,11 +118,47 @@ public class BackwardsSearchDataTest {
 			for(int n = 0; n < this.textRand.length(); n++) {
 				int naive = 0;
 				for(int i = 0; i < n; i++)
-					if(this.bsdRand.bwt[i] == c)
+					if(this.bsdRand.symbols[this.bsdRand.bwtSymbol(i)] == c)
 						naive += 1;
 				
-				assertThat(String.format("rank(%c, %d)", c, n), this.bsdRand.rank(c, n), is(naive));
+				assertThat(String.format("rank(%c, %d)", c, n), this.bsdRand.rank(this.bsdRand.symbol(c), n), is(naive));
+			}
+		}
+	}
+	
+	@Test
+	public void testWaveletRank() {
+		// The wavelet tree must agree with the block-based rank everywhere
+		for(int c = 0; c < this.waveletRand.sigma(); c++) {
+			for(int n = 0; n < this.textRand.length(); n++) {
+				assertThat(String.format("rank(%d, %d)", c, n),
+						this.waveletRand.rank(c, n), is(this.bsdRand.rank(c, n)));
 			}
 		}
 	}
+	
+	@Test
+	public void testSparseAlphabet() {
+		// A single high codepoint must not blow up the per-block tables
+		String text = "ab\u4e00ab" + Searches.EOT;
+		int[] sa = new int[text.length()];
+		sais.suffixsort(text, sa, text.length());
+		BackwardsSearchData bsd = new BackwardsSearchData(text, sa);
+		
+		assertThat(bsd.sigma(), is(4));
+		assertThat(bsd.counts.length, is(4));
+		assertThat(bsd.blocks.limit(), is((text.length() / BackwardsSearchData.BLOCK_SIZE + 1) * 4));
+		assertThat(bsd.rank(bsd.symbol('\u4e00'), text.length()), is(1));
+	}
+	
+	@Test
+	public void testLocate() {
+		for(int sampleRate: new int[] { 1, 3, 32 }) {
+			BackwardsSearchData sampled = new BackwardsSearchData(this.textRand,
+					this.saRand, BackwardsSearchData.RankBackend.blocks, sampleRate);
+			
+			for(int i = 0; i < this.saRand.length; i++)
+				assertThat("locate(" + i + ")", sampled.locate(i), is(this.saRand[i]));
+		}
+	}
 }
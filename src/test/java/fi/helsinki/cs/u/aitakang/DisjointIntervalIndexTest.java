@@ -0,0 +1,137 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DisjointIntervalIndexTest {
+
+	/** Word-like disjoint intervals, with every 20th overlapping its neighbours. */
+	private List<Metadata<Integer>> words;
+
+	/** Random, often overlapping intervals. */
+	private List<Metadata<Integer>> random;
+
+	@Before
+	public void setUp() throws Exception {
+		Random random = new Random(22);
+
+		this.words = new ArrayList<>();
+		for(int i = 0, pos = 0; i < 2000; i++) {
+			int length = 1 + random.nextInt(10);
+			if(i % 20 == 0)
+				this.words.add(new Metadata<Integer>(Math.max(0, pos - 5), pos + 30, i));
+			else
+				this.words.add(new Metadata<Integer>(pos, pos + length, i));
+			pos += length + random.nextInt(2);
+		}
+
+		this.random = new ArrayList<>();
+		for(int i = 0; i < 1000; i++) {
+			int begin = random.nextInt(10000);
+			this.random.add(new Metadata<Integer>(begin, begin + 1 + random.nextInt(100), i));
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.words = null;
+		this.random = null;
+	}
+
+	@Test
+	public void testCreate() {
+		assertThat(DisjointIntervalIndex.create(this.words), instanceOf(DisjointIntervalIndex.class));
+		assertThat(DisjointIntervalIndex.create(this.random), instanceOf(IntervalTree.class));
+	}
+
+	@Test
+	public void testContaining() {
+		// Words with a box for each line of ten words and one for the page,
+		// which contain them
+		List<Metadata<Integer>> boxes = new ArrayList<>();
+		int lineBegin = 0;
+		int pos = 0;
+		for(int i = 0; i < 10000; i++) {
+			boxes.add(new Metadata<Integer>(pos, pos + 5, i));
+			pos += 6;
+			if(i % 10 == 9) {
+				boxes.add(new Metadata<Integer>(lineBegin, pos - 1, -i));
+				lineBegin = pos;
+			}
+		}
+		boxes.add(new Metadata<Integer>(0, pos, -1));
+
+		IntervalIndex<Metadata<Integer>> index = DisjointIntervalIndex.create(boxes);
+		assertThat(index, instanceOf(DisjointIntervalIndex.class));
+
+		IntervalTree<Metadata<Integer>> tree = new IntervalTree<>(new ArrayList<>(boxes));
+		for(int begin = -5; begin < pos + 5; begin += 13) {
+			Range range = new Range(begin, begin + 1 + (begin + 5) % 20);
+			List<Metadata<Integer>> found = index.find(range);
+
+			assertThat(found.size(), is(new HashSet<>(found).size()));
+			assertThat(new HashSet<>(found), is(new HashSet<>(tree.find(range))));
+		}
+	}
+
+	@Test
+	public void testFind() {
+		List<List<Metadata<Integer>>> inputs = new ArrayList<>();
+		inputs.add(this.words);
+		inputs.add(this.random);
+
+		for(List<Metadata<Integer>> metas: inputs) {
+			DisjointIntervalIndex<Metadata<Integer>> index = new DisjointIntervalIndex<>(metas);
+			IntervalTree<Metadata<Integer>> tree = new IntervalTree<>(new ArrayList<>(metas));
+
+			for(int point = -5; point < 12000; point += 3)
+				assertThat(new HashSet<>(index.find(point)), is(new HashSet<>(tree.find(point))));
+
+			for(int begin = -5; begin < 12000; begin += 7) {
+				Range range = new Range(begin, begin + 1 + (begin + 5) % 50);
+				List<Metadata<Integer>> found = index.find(range);
+
+				assertThat(found.size(), is(new HashSet<>(found).size()));
+				assertThat(new HashSet<>(found), is(new HashSet<>(tree.find(range))));
+			}
+
+			assertThat(index.find(new Range(Integer.MIN_VALUE, Integer.MAX_VALUE)).size(), is(metas.size()));
+		}
+	}
+
+	@Test
+	public void testBatch() {
+		DisjointIntervalIndex<Metadata<Integer>> index = new DisjointIntervalIndex<>(this.words);
+		IntervalTree<Metadata<Integer>> tree = new IntervalTree<>(new ArrayList<>(this.words));
+
+		int[] positions = new int[300];
+		Random random = new Random(23);
+		for(int i = 0; i < positions.length; i++)
+			positions[i] = random.nextInt(12000);
+
+		final List<List<Metadata<Integer>>> found = new ArrayList<>();
+		for(int i = 0; i < positions.length; i++)
+			found.add(new ArrayList<Metadata<Integer>>());
+
+		index.find(positions, positions.length, 4, new OccurrenceVisitor<Metadata<Integer>>() {
+			@Override
+			public void visit(int occurrence, Metadata<Integer> interval) {
+				found.get(occurrence).add(interval);
+			}
+		});
+
+		for(int i = 0; i < positions.length; i++)
+			assertThat(new HashSet<>(found.get(i)),
+					is(new HashSet<>(tree.find(new Range(positions[i], positions[i] + 4)))));
+	}
+}
@@ -0,0 +1,58 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class EliasFanoTest {
+
+	@Test
+	public void testEmpty() {
+		EliasFano ef = new EliasFano(new int[0], 0);
+
+		assertThat(ef.rank(0), is(0));
+		assertThat(ef.rank(100), is(0));
+	}
+
+	@Test
+	public void testGetAndRank() {
+		Random random = new Random(22);
+
+		// Sparse, dense with repeats, and values near the top of the int range
+		int[][] sequences = new int[][] { new int[3000], new int[3000], new int[500] };
+		for(int i = 0; i < 3000; i++) {
+			sequences[0][i] = random.nextInt(1000000);
+			sequences[1][i] = random.nextInt(1000);
+		}
+		for(int i = 0; i < 500; i++)
+			sequences[2][i] = Integer.MAX_VALUE - random.nextInt(100000);
+
+		for(int[] values: sequences) {
+			Arrays.sort(values);
+			EliasFano ef = new EliasFano(values, values.length);
+
+			for(int i = 0; i < values.length; i++)
+				assertThat(ef.get(i), is(values[i]));
+
+			for(int i = 0; i < 2000; i++) {
+				long x = i % 2 == 0 ?
+						values[random.nextInt(values.length)] + random.nextInt(3) - 1 :
+						random.nextInt(Integer.MAX_VALUE);
+				assertThat(ef.rank(x), is(naiveRank(values, x)));
+			}
+			assertThat(ef.rank(-1), is(0));
+			assertThat(ef.rank((long)Integer.MAX_VALUE + 1), is(values.length));
+		}
+	}
+
+	private static int naiveRank(int[] values, long x) {
+		int rank = 0;
+		while(rank < values.length && values[rank] < x)
+			rank++;
+		return rank;
+	}
+}
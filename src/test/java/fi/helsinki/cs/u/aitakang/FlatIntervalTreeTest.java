@@ -0,0 +1,180 @@
+package fi.helsinki.cs.u.aitakang;
+
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class FlatIntervalTreeTest {
+
+	/** Random, often overlapping and nested intervals. */
+	private List<Metadata<Integer>> metas;
+
+	private IntervalTree<Metadata<Integer>> tree;
+	private FlatIntervalTree<Metadata<Integer>> flat;
+
+	@Before
+	public void setUp() throws Exception {
+		Random random = new Random(19);
+
+		this.metas = new ArrayList<>();
+		for(int i = 0; i < 1000; i++) {
+			int begin = random.nextInt(10000);
+			int length = 1 + random.nextInt(i % 10 == 0 ? 2000 : 50);
+			this.metas.add(new Metadata<Integer>(begin, begin + length, i));
+		}
+
+		this.tree = new IntervalTree<>(new ArrayList<>(this.metas));
+		this.flat = new FlatIntervalTree<>(this.metas);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.metas = null;
+		this.tree = null;
+		this.flat = null;
+	}
+
+	@Test
+	public void testConstruction() {
+		List<Range> empty = Collections.emptyList();
+		FlatIntervalTree<Range> emptyTree = new FlatIntervalTree<>(empty);
+		assertThat(emptyTree.find(0).isEmpty(), is(true));
+		assertThat(emptyTree.find(new Range(0, 10)).isEmpty(), is(true));
+
+		FlatIntervalTree<Range> single = new FlatIntervalTree<>(
+				Collections.singletonList(new Range(0, 1)));
+		assertThat(single.find(0).size(), is(1));
+		assertThat(single.find(1).isEmpty(), is(true));
+	}
+
+	@Test
+	public void testFindInt() {
+		for(int point = -10; point < 12100; point += 7) {
+			List<Metadata<Integer>> found = this.flat.find(point);
+
+			assertThat(found.size(), is(this.tree.find(point).size()));
+			assertThat(new HashSet<>(found), is(new HashSet<>(this.tree.find(point))));
+		}
+	}
+
+	@Test
+	public void testFindRange() {
+		Random random = new Random(20);
+
+		for(int i = 0; i < 2000; i++) {
+			int begin = random.nextInt(12000) - 100;
+			int end = begin + 1 + random.nextInt(i % 2 == 0 ? 10 : 1000);
+			Range range = new Range(begin, end);
+
+			List<Metadata<Integer>> found = this.flat.find(range);
+
+			// Each interval is reported once, without a set
+			assertThat(new HashSet<>(found).size(), is(found.size()));
+			assertThat(new HashSet<>(found), is(new HashSet<>(this.tree.find(range))));
+		}
+	}
+
+	@Test
+	public void testVisitor() {
+		final List<Metadata<Integer>> visited = new ArrayList<>();
+		IntervalVisitor<Metadata<Integer>> visitor = new IntervalVisitor<Metadata<Integer>>() {
+			@Override
+			public void visit(Metadata<Integer> interval) {
+				visited.add(interval);
+			}
+		};
+
+		for(int begin = 0; begin < 10000; begin += 97) {
+			Range range = new Range(begin, begin + 200);
+
+			visited.clear();
+			this.flat.find(range, visitor);
+
+			assertThat(visited.size(), is(new HashSet<>(visited).size()));
+			assertThat(new HashSet<>(visited), is(new HashSet<>(this.tree.find(range))));
+
+			visited.clear();
+			this.flat.find(begin, visitor);
+			assertThat(new HashSet<>(visited), is(new HashSet<>(this.tree.find(begin))));
+		}
+	}
+
+	@Test
+	public void testBatch() {
+		checkBatch(new Random(21), 500);
+	}
+
+	@Test
+	public void testBatchFew() {
+		// Searched one by one
+		checkBatch(new Random(22), 5);
+	}
+
+	@Test
+	public void testBatchSparse() {
+		// Far enough apart for the sweep to jump between them
+		checkBatch(new Random(23), 20);
+	}
+
+	private void checkBatch(Random random, int count) {
+		final int length = 30;
+		int[] positions = new int[count];
+		for(int i = 0; i < positions.length; i++)
+			positions[i] = random.nextInt(11000) - 100;
+
+		for(IntervalIndex<Metadata<Integer>> index: Arrays.asList(this.tree, this.flat)) {
+			final List<List<Metadata<Integer>>> found = new ArrayList<>();
+			for(int i = 0; i < positions.length; i++)
+				found.add(new ArrayList<Metadata<Integer>>());
+
+			index.find(positions, positions.length, length,
+					new OccurrenceVisitor<Metadata<Integer>>() {
+				@Override
+				public void visit(int occurrence, Metadata<Integer> interval) {
+					found.get(occurrence).add(interval);
+				}
+			});
+
+			// Sorted in place, and each found the same as its own search
+			for(int i = 0; i < positions.length; i++) {
+				if(i > 0)
+					assertThat(positions[i - 1] <= positions[i], is(true));
+
+				List<Metadata<Integer>> expected = this.tree.find(
+						new Range(positions[i], positions[i] + length));
+				assertThat(found.get(i).size(), is(expected.size()));
+				assertThat(new HashSet<>(found.get(i)), is(new HashSet<>(expected)));
+			}
+		}
+	}
+
+	@Test
+	public void testBottomHeavy() {
+		List<Metadata<Integer>> bottomHeavy = new ArrayList<>();
+		for(int i = 0; i < 10; i++)
+			bottomHeavy.add(new Metadata<Integer>(0, i + 1, i));
+
+		FlatIntervalTree<Metadata<Integer>> bottomHeavyTree = new FlatIntervalTree<>(bottomHeavy);
+
+		assertThat(bottomHeavyTree.find(new Range(Integer.MIN_VALUE, 0)).isEmpty(), is(true));
+		assertThat(bottomHeavyTree.find(new Range(10, Integer.MAX_VALUE)).isEmpty(), is(true));
+
+		for(int i = 0; i < 10; i++) {
+			assertThat(bottomHeavyTree.find(i).size(), is(10 - i));
+			assertThat(bottomHeavyTree.find(new Range(Integer.MIN_VALUE, i + 1)).size(), is(10));
+			assertThat(bottomHeavyTree.find(new Range(i, Integer.MAX_VALUE)).size(), is(10 - i));
+		}
+	}
+}
@@ -0,0 +1,167 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sais.sais;
+
+public class IndexFileTest {
+
+	private String text;
+	private IntBuffer sa;
+	private BackwardsSearchData bsd;
+	private Path path;
+	private Path source;
+
+	@Before
+	public void setUp() throws Exception {
+		// Long enough to need several rank blocks
+		Random rng = new Random(0);
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 3 * BackwardsSearchData.BLOCK_SIZE + 7; i++)
+			sb.append("acgt\u00e4".charAt(rng.nextInt(5)));
+		this.text = sb.toString() + Searches.EOT;
+
+		int[] sa = new int[this.text.length()];
+		sais.suffixsort(this.text, sa, this.text.length());
+		this.sa = IntBuffer.wrap(sa);
+		this.bsd = new BackwardsSearchData(this.text, sa);
+
+		this.path = Files.createTempFile("index", ".spix");
+
+		// The text file, without the terminator
+		this.source = Files.createTempFile("index", ".txt");
+		Files.write(this.source, sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(this.path);
+		Files.deleteIfExists(this.source);
+
+		this.text = null;
+		this.sa = null;
+		this.bsd = null;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		IndexFile.write(this.path, this.source, this.text, this.sa, this.bsd);
+		IndexFile index = IndexFile.load(this.path);
+
+		assertThat(index.matches(this.source), is(true));
+		assertThat(index.text.toString(), is(this.text));
+		assertThat(index.bsd.length(), is(this.bsd.length()));
+		assertThat(index.bsd.sigma(), is(this.bsd.sigma()));
+
+		for(int i = 0; i < this.text.length(); i++)
+			assertThat(index.sa.get(i), is(this.sa.get(i)));
+
+		for(int c = 0; c < this.bsd.sigma(); c++) {
+			assertThat(index.bsd.counts[c], is(this.bsd.counts[c]));
+			for(int n = 0; n <= this.text.length(); n++)
+				assertThat(index.bsd.rank(c, n), is(this.bsd.rank(c, n)));
+		}
+	}
+
+	@Test
+	public void testSearchMapped() throws IOException {
+		IndexFile.write(this.path, this.source, this.text, this.sa, this.bsd);
+		IndexFile index = IndexFile.load(this.path);
+
+		for(String pattern: new String[] { "acg", "\u00e4a", "tttt", "x" }) {
+			Match binary = Searches.binarySearch(this.text, this.sa, pattern);
+			Match mapped = Searches.binarySearch(index.text, index.sa, pattern);
+			Match backwards = Searches.backwardsSearch(index.text, index.sa,
+					index.bsd, pattern);
+
+			if(binary == null) {
+				assertThat(mapped == null, is(true));
+				assertThat(backwards == null, is(true));
+			}
+			else {
+				assertThat(mapped.begin, is(binary.begin));
+				assertThat(mapped.end, is(binary.end));
+				assertThat(backwards.begin, is(binary.begin));
+				assertThat(backwards.end, is(binary.end));
+			}
+		}
+	}
+
+	@Test
+	public void testOtherText() throws IOException {
+		IndexFile.write(this.path, this.source, this.text, this.sa, this.bsd);
+		IndexFile index = IndexFile.load(this.path);
+		FileTime modified = Files.getLastModifiedTime(this.source);
+
+		assertThat(index.matches(this.source), is(true));
+		assertThat(index.verify(this.source), is(true));
+
+		// Touched
+		Files.setLastModifiedTime(this.source,
+				FileTime.fromMillis(modified.toMillis() + 1000));
+		assertThat(index.matches(this.source), is(false));
+
+		// Same size and time, one character changed: only verify notices
+		byte[] bytes = Files.readAllBytes(this.source);
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(this.source, bytes);
+		Files.setLastModifiedTime(this.source, modified);
+		assertThat(index.matches(this.source), is(true));
+		assertThat(index.verify(this.source), is(false));
+
+		Files.write(this.source, Arrays.copyOf(bytes, bytes.length - 1));
+		Files.setLastModifiedTime(this.source, modified);
+		assertThat(index.matches(this.source), is(false));
+	}
+
+	@Test(expected = IndexFile.FormatException.class)
+	public void testNotAnIndex() throws IOException {
+		Files.write(this.path, new byte[64]);
+		IndexFile.load(this.path);
+	}
+
+	@Test(expected = IndexFile.FormatException.class)
+	public void testOtherVersion() throws IOException {
+		IndexFile.write(this.path, this.source, this.text, this.sa, this.bsd);
+
+		byte[] bytes = Files.readAllBytes(this.path);
+		bytes[4] = (byte)(IndexFile.VERSION - 1);
+		Files.write(this.path, bytes);
+		IndexFile.load(this.path);
+	}
+	
+	@Test
+	public void testUtf8RoundTrip() throws IOException {
+		byte[] bytes = ("acgt\u00e4" + Searches.EOT).getBytes(StandardCharsets.UTF_8);
+		int[] sa = new int[bytes.length];
+		sais.suffixsort(bytes, sa, bytes.length);
+		Utf8Text text = new Utf8Text(ByteBuffer.wrap(bytes));
+		
+		Files.write(this.source, "acgt\u00e4".getBytes(StandardCharsets.UTF_8));
+		IndexFile.write(this.path, this.source, text, IntBuffer.wrap(sa),
+				new BackwardsSearchData(text, sa));
+		IndexFile index = IndexFile.load(this.path);
+		
+		assertThat(index.text instanceof Utf8Text, is(true));
+		assertThat(index.text.toString(), is("acgt\u00e4" + Searches.EOT));
+		
+		Match match = Searches.backwardsSearch(index.text, index.sa, index.bsd,
+				Utf8Text.encode("t\u00e4"));
+		assertThat(index.sa.get(match.begin), is(3));
+	}
+}
@@ -123,6 +123,37 @@ public class IntervalTreeTest {
 		assertThat(this.bottomHeavyTree.find(new Range(0, 1)).size(), is(10));
 	}
 	
+	@Test
+	public void testVisitor() {
+		final List<Metadata<Integer>> visited = new ArrayList<>();
+		IntervalVisitor<Metadata<Integer>> visitor = new IntervalVisitor<Metadata<Integer>>() {
+			@Override
+			public void visit(Metadata<Integer> interval) {
+				visited.add(interval);
+			}
+		};
+		
+		// Each overlapping interval is visited once, also ones that begin,
+		// end in and contain the range
+		for(int i = 0; i < 22; i++) {
+			visited.clear();
+			this.overlapTree.find(new Range(i, i + 3), visitor);
+			
+			assertThat(visited.size(), is(new HashSet<>(visited).size()));
+			assertThat(visited.size(), is(this.overlapTree.find(new Range(i, i + 3)).size()));
+		}
+		
+		for(int i = 0; i < 10; i++) {
+			visited.clear();
+			this.bottomHeavyTree.find(new Range(i, i + 1), visitor);
+			assertThat(visited.size(), is(10 - i));
+			
+			visited.clear();
+			this.bottomHeavyTree.find(i, visitor);
+			assertThat(visited.size(), is(10 - i));
+		}
+	}
+	
 	@Test
 	public void testSimple1() {
 		// Nothing before, nothing after
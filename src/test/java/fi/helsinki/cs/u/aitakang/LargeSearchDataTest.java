@@ -0,0 +1,121 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import sais.sais;
+
+public class LargeSearchDataTest {
+
+	private static final String TEXT =
+			"abracadabra r\u00e4ks\u00e4 kadabra abrakadabra \u4e00 cadabra";
+	
+	@Test
+	public void testBackwardsSearch() {
+		byte[] raw = TEXT.getBytes(StandardCharsets.UTF_8);
+		LargeText large = LargeSuffixSortTest.text(raw);
+		LargeSearchData data = new LargeSearchData(large, LargeSuffixSort.suffixsort(large));
+		
+		// The same search over the Utf8Text
+		byte[] bytes = Arrays.copyOf(raw, raw.length + 1);
+		bytes[raw.length] = (byte)Searches.EOT;
+		int[] sa = new int[bytes.length];
+		sais.suffixsort(bytes, sa, bytes.length);
+		Utf8Text text = new Utf8Text(ByteBuffer.wrap(bytes));
+		BackwardsSearchData bsd = new BackwardsSearchData(text, sa);
+		
+		for(String query: Arrays.asList("abra", "a", "dabra ", "r\u00e4ks\u00e4", "\u4e00", "zzz", "abrab")) {
+			String pattern = Utf8Text.encode(query);
+			LargeMatch match = Searches.backwardsSearch(data, pattern);
+			Match expected = Searches.backwardsSearch(text, IntBuffer.wrap(sa), bsd, pattern);
+			
+			if(expected == null) {
+				assertThat(query, match, is(nullValue()));
+				continue;
+			}
+			
+			assertThat(query, match.begin, is((long)expected.begin));
+			assertThat(query, match.end, is((long)expected.end));
+			for(long i = match.begin; i < match.end; i++)
+				assertThat(query, data.locate(i), is((long)sa[(int)i]));
+		}
+	}
+	
+	@Test
+	public void testMetadata() throws Exception {
+		// Offsets past 2^31, nested and overlapping
+		Random random = new Random(5);
+		long base = 3L << 31;
+		long[] begins = new long[500];
+		long[] ends = new long[500];
+		int[] values = new int[500];
+		for(int i = 0; i < begins.length; i++) {
+			begins[i] = base + random.nextInt(10000);
+			ends[i] = begins[i] + 1 + random.nextInt(i % 10 == 0 ? 3000 : 30);
+			values[i] = i;
+		}
+		LargeMetadataIndex index = new LargeMetadataIndex(begins, ends, values, begins.length);
+		
+		final Set<Integer> found = new HashSet<>();
+		ColumnIntervalTree.RowVisitor visitor = new ColumnIntervalTree.RowVisitor() {
+			@Override
+			public void visit(int row) {
+				assertThat(found.add(row), is(true));
+			}
+		};
+		
+		for(int i = 0; i < 1000; i++) {
+			long begin = base - 50 + random.nextInt(13100);
+			long end = begin + 1 + random.nextInt(i % 2 == 0 ? 5 : 500);
+			
+			Set<Integer> expected = new HashSet<>();
+			for(int row = 0; row < begins.length; row++)
+				if(begins[row] < end && ends[row] > begin)
+					expected.add(row);
+			
+			found.clear();
+			index.find(begin, end, visitor);
+			assertThat(found, is(expected));
+		}
+	}
+	
+	@Test
+	public void testReadMetadata() throws Exception {
+		LargeText text = LargeSuffixSortTest.text("r\u00e4ks\u00e4 abra".getBytes(StandardCharsets.UTF_8));
+		
+		LargeMetadataIndex index = LargeMetadataIndex.read(new StringReader(
+				"[{\"begin\": 0, \"end\": 5, \"value\": 1}, {\"begin\": 6, \"end\": 10, \"value\": 2}]"),
+				text);
+		
+		// Converted to byte offsets
+		assertThat(index.size(), is(2));
+		assertThat(index.begin(0), is(0L));
+		assertThat(index.end(0), is(7L));
+		assertThat(index.begin(1), is(8L));
+		assertThat(index.end(1), is(12L));
+		
+		final List<Integer> values = new ArrayList<>();
+		final LargeMetadataIndex found = index;
+		index.find(6, 9, new ColumnIntervalTree.RowVisitor() {
+			@Override
+			public void visit(int row) {
+				values.add(found.value(row));
+			}
+		});
+		assertThat(values, is(Arrays.asList(1, 2)));
+	}
+}
@@ -0,0 +1,72 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import sais.sais;
+
+public class LargeSuffixSortTest {
+
+	/**
+	 * A large text of the given bytes.
+	 */
+	static LargeText text(byte[] bytes) {
+		LargeByteArray array = new LargeByteArray(bytes.length);
+		for(int i = 0; i < bytes.length; i++)
+			array.set(i, bytes[i]);
+		return new LargeText(array);
+	}
+	
+	private static void assertSameAsSais(byte[] bytes) {
+		// sais sorts the bytes with the terminator
+		byte[] terminated = Arrays.copyOf(bytes, bytes.length + 1);
+		terminated[bytes.length] = (byte)Searches.EOT;
+		int[] expected = new int[terminated.length];
+		sais.suffixsort(terminated, expected, terminated.length);
+		
+		Packed40Array actual = LargeSuffixSort.suffixsort(text(bytes));
+		
+		assertThat(actual.length, is((long)expected.length));
+		for(int i = 0; i < expected.length; i++)
+			assertThat("sa[" + i + "]", actual.get(i), is((long)expected[i]));
+	}
+	
+	private static byte[] randomBytes(Random rng, int sigma, int length) {
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++)
+			bytes[i] = (byte)('a' + rng.nextInt(sigma));
+		return bytes;
+	}
+	
+	@Test
+	public void testSmall() {
+		assertSameAsSais("banana".getBytes(StandardCharsets.UTF_8));
+		assertSameAsSais(new byte[0]);
+		assertSameAsSais("aaaaaaaaaaaaaaaa".getBytes(StandardCharsets.UTF_8));
+		assertSameAsSais("r\u00e4ks\u00e4 \u4e00\u4e00".getBytes(StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testRandom() {
+		Random rng = new Random(0);
+		
+		// A binary alphabet has long repeats and so needs many rounds
+		assertSameAsSais(randomBytes(rng, 2, 50000));
+		assertSameAsSais(randomBytes(rng, 4, 50000));
+		assertSameAsSais(randomBytes(rng, 26, 20000));
+	}
+	
+	@Test
+	public void testPeriodic() {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 10000; i++)
+			sb.append("abc");
+		assertSameAsSais(sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
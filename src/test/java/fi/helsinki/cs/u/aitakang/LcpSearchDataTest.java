@@ -0,0 +1,94 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sais.sais;
+
+public class LcpSearchDataTest {
+
+	private String text;
+	private IntBuffer sa;
+	private LcpSearchData lcp;
+
+	@Before
+	public void setUp() throws Exception {
+		this.text = "banana" + Searches.EOT;
+		int[] sa = new int[this.text.length()];
+		sais.suffixsort(this.text, sa, this.text.length());
+
+		this.sa = IntBuffer.wrap(sa);
+		this.lcp = new LcpSearchData(this.text, this.sa);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.text = null;
+		this.sa = null;
+		this.lcp = null;
+	}
+
+	@Test
+	public void testLcp() {
+		// Suffixes in order: $, a$, ana$, anana$, banana$, na$, nana$
+		int[] expected = { 0, 0, 1, 3, 0, 0, 2 };
+
+		for(int i = 0; i < expected.length; i++)
+			assertThat(this.lcp.lcp[i], is(expected[i]));
+	}
+
+	@Test
+	public void testBinarySearch() {
+		for(String pattern: new String[] { "a", "an", "ana", "banana", "na",
+				"n", "bn", "foo", "bananana", "\u0003" }) {
+			assertSame(Searches.binarySearch(this.text, this.sa, pattern),
+					Searches.binarySearch(this.text, this.sa, this.lcp, pattern));
+		}
+	}
+
+	@Test
+	public void testBinarySearchRandom() {
+		// Small alphabet, so there are long common prefixes to skip over
+		Random rng = new Random(0);
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 5000; i++)
+			sb.append("ab".charAt(rng.nextInt(2)));
+		String text = sb.toString() + Searches.EOT;
+
+		int[] sa = new int[text.length()];
+		sais.suffixsort(text, sa, text.length());
+		IntBuffer saBuffer = IntBuffer.wrap(sa);
+		LcpSearchData lcp = new LcpSearchData(text, saBuffer);
+
+		for(int i = 0; i < 500; i++) {
+			int begin = rng.nextInt(text.length() - 1);
+			int end = Math.min(begin + 1 + rng.nextInt(20), text.length() - 1);
+			String pattern = text.substring(begin, end);
+
+			// Also some that likely don't occur
+			if(i % 2 == 1)
+				pattern += "ab".charAt(rng.nextInt(2));
+
+			assertSame(Searches.binarySearch(text, saBuffer, pattern),
+					Searches.binarySearch(text, saBuffer, lcp, pattern));
+		}
+	}
+
+	private static void assertSame(Match expected, Match actual) {
+		if(expected == null) {
+			assertThat(actual == null, is(true));
+		}
+		else {
+			assertThat(actual.begin, is(expected.begin));
+			assertThat(actual.end, is(expected.end));
+			assertThat(actual.length, is(expected.length));
+		}
+	}
+}
@@ -0,0 +1,74 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class MetadataColumnsTest {
+
+	@Test
+	public void testColumns() {
+		MetadataColumns columns = new MetadataColumns();
+		for(int i = 0; i < 100; i++)
+			assertThat(columns.add(2 * i, 2 * i + 3, -i), is(i));
+
+		columns.setPayload(50, "fifty");
+		columns.trim();
+
+		assertThat(columns.size(), is(100));
+		assertThat(columns.begin(99), is(198));
+		assertThat(columns.end(99), is(201));
+		assertThat(columns.value(99), is(-99));
+		assertThat((String)columns.payload(50), is("fifty"));
+		assertThat(columns.payload(51), is(nullValue()));
+		assertThat(columns.get(3).value, is(-3));
+	}
+
+	@Test
+	public void testIndex() {
+		Random random = new Random(23);
+
+		List<Metadata<Integer>> metas = new ArrayList<>();
+		for(int i = 0; i < 1000; i++) {
+			int begin = random.nextInt(10000);
+			metas.add(new Metadata<Integer>(begin, begin + 1 + random.nextInt(100), i));
+		}
+
+		IntervalTree<Metadata<Integer>> tree = new IntervalTree<>(new ArrayList<>(metas));
+		ColumnMetadataIndex index = new ColumnMetadataIndex(MetadataColumns.of(metas));
+
+		for(int begin = 0; begin < 10200; begin += 13) {
+			Range range = new Range(begin, begin + 1 + begin % 40);
+
+			final Set<Integer> rows = new HashSet<>();
+			index.tree.find(range.begin, range.end, new ColumnIntervalTree.RowVisitor() {
+				@Override
+				public void visit(int row) {
+					assertThat(rows.add(row), is(true));
+				}
+			});
+
+			// Rows are in the order of the metadata, and the values say which
+			Set<Integer> expected = new HashSet<>();
+			for(Metadata<Integer> meta: tree.find(range))
+				expected.add(meta.value);
+			assertThat(rows, is(expected));
+
+			Set<Integer> found = new HashSet<>();
+			for(Metadata<Integer> meta: index.find(begin))
+				found.add(meta.value);
+			expected.clear();
+			for(Metadata<Integer> meta: tree.find(begin))
+				expected.add(meta.value);
+			assertThat(found, is(expected));
+		}
+	}
+}
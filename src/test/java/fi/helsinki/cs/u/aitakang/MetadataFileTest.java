@@ -0,0 +1,136 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetadataFileTest {
+
+	/** Unordered, overlapping metadata with values of any size. */
+	private List<Metadata<Integer>> metas;
+
+	private Path path;
+	private Path source;
+
+	@Before
+	public void setUp() throws Exception {
+		Random random = new Random(25);
+
+		this.metas = new ArrayList<>();
+		for(int i = 0; i < 1000; i++) {
+			int begin = random.nextInt(10000);
+			this.metas.add(new Metadata<Integer>(begin,
+					begin + 1 + random.nextInt(i % 10 == 0 ? 1000 : 20),
+					i % 3 == 0 ? random.nextInt() : i));
+		}
+
+		this.path = Files.createTempFile("metadata", ".spmd");
+
+		// Stands in for the JSON file, only its size and time are used
+		this.source = Files.createTempFile("metadata", ".json");
+		Files.write(this.source, "[]".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(this.path);
+		Files.deleteIfExists(this.source);
+
+		this.metas = null;
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		MetadataFile.write(this.path, this.source, MetadataColumns.of(this.metas), true);
+		MetadataFile metafile = MetadataFile.load(this.path);
+
+		assertThat(metafile.size, is(this.metas.size()));
+		assertThat(metafile.byteOffsets, is(true));
+
+		for(int row = 0; row < this.metas.size(); row++) {
+			Metadata<Integer> meta = metafile.get(row);
+			assertThat(meta.begin, is(this.metas.get(row).begin));
+			assertThat(meta.end, is(this.metas.get(row).end));
+			assertThat(meta.value, is(this.metas.get(row).value));
+		}
+	}
+
+	@Test
+	public void testFind() throws IOException {
+		MetadataFile.write(this.path, this.source, MetadataColumns.of(this.metas), false);
+		MetadataFile metafile = MetadataFile.load(this.path);
+		IntervalTree<Metadata<Integer>> tree = new IntervalTree<>(new ArrayList<>(this.metas));
+
+		for(int begin = -10; begin < 11100; begin += 11) {
+			Range range = new Range(begin, begin + 1 + (begin + 10) % 30);
+
+			assertThat(values(metafile.find(range)), is(values(tree.find(range))));
+			assertThat(values(metafile.find(begin)), is(values(tree.find(begin))));
+		}
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		MetadataFile.write(this.path, this.source, new MetadataColumns(), false);
+		MetadataFile metafile = MetadataFile.load(this.path);
+
+		assertThat(metafile.size, is(0));
+		assertThat(metafile.find(new Range(0, 10)).isEmpty(), is(true));
+	}
+
+	@Test
+	public void testOtherSource() throws IOException {
+		MetadataFile.write(this.path, this.source, MetadataColumns.of(this.metas), false);
+		MetadataFile metafile = MetadataFile.load(this.path);
+		FileTime modified = Files.getLastModifiedTime(this.source);
+
+		assertThat(metafile.matches(this.source), is(true));
+
+		Files.setLastModifiedTime(this.source,
+				FileTime.fromMillis(modified.toMillis() + 1000));
+		assertThat(metafile.matches(this.source), is(false));
+
+		Files.write(this.source, "[ ]".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(this.source, modified);
+		assertThat(metafile.matches(this.source), is(false));
+	}
+
+	@Test(expected = IndexFile.FormatException.class)
+	public void testOtherVersion() throws IOException {
+		MetadataFile.write(this.path, this.source, MetadataColumns.of(this.metas), false);
+
+		byte[] bytes = Files.readAllBytes(this.path);
+		bytes[4] = (byte)(MetadataFile.VERSION - 1);
+		Files.write(this.path, bytes);
+		MetadataFile.load(this.path);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testPayloads() throws IOException {
+		MetadataColumns columns = MetadataColumns.of(this.metas);
+		columns.setPayload(0, "payload");
+
+		MetadataFile.write(this.path, this.source, columns, false);
+	}
+
+	private static Set<Integer> values(List<Metadata<Integer>> metas) {
+		Set<Integer> values = new HashSet<>();
+		for(Metadata<Integer> meta: metas)
+			values.add(meta.value);
+		return values;
+	}
+}
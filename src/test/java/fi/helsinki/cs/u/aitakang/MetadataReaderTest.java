@@ -0,0 +1,95 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.gson.JsonSyntaxException;
+
+public class MetadataReaderTest {
+
+	private static final String INTS =
+			"[{\"end\":9,\"begin\":0,\"value\":1}," +
+			" {\"begin\":10,\"end\":15,\"value\":2,\"note\":[1,2]}]";
+
+	private static final String PAYLOADS =
+			"[{\"begin\":0,\"end\":9,\"value\":1}," +
+			" {\"begin\":10,\"end\":15,\"value\":{\"word\":\"cat\"}}," +
+			" {\"begin\":16,\"end\":20,\"value\":\"dog\"}]";
+
+	@Test
+	public void testReadList() throws IOException {
+		List<Metadata<Integer>> metas = MetadataReader.readList(new StringReader(INTS));
+
+		assertThat(metas.size(), is(2));
+		assertThat(metas.get(0).begin, is(0));
+		assertThat(metas.get(0).end, is(9));
+		assertThat(metas.get(0).value, is(1));
+		assertThat(metas.get(1).begin, is(10));
+		assertThat(metas.get(1).value, is(2));
+
+		assertThat(MetadataReader.readList(new StringReader("[]")).isEmpty(), is(true));
+	}
+
+	@Test(expected = JsonSyntaxException.class)
+	public void testReadListPayload() throws IOException {
+		MetadataReader.readList(new StringReader(PAYLOADS));
+	}
+
+	@Test
+	public void testIncomplete() throws IOException {
+		// The second interval must not get the first one's end
+		for(String json: new String[] {
+				"[{\"begin\":0,\"end\":9,\"value\":1}, {\"begin\":10,\"value\":2}]",
+				"[{\"begin\":0,\"end\":9,\"value\":1}, {\"end\":15,\"value\":2}]" }) {
+			try(MetadataReader reader = new MetadataReader(new StringReader(json))) {
+				assertThat(reader.next(), is(true));
+				reader.next();
+				fail("Read an interval without a begin or end: " + json);
+			}
+			catch(IOException e) {
+				assertThat(e.getMessage(), containsString("Metadata interval 1"));
+			}
+		}
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		// The interval trees cannot hold an interval that ends at or before
+		// its begin
+		for(String json: new String[] {
+				"[{\"begin\":0,\"end\":9,\"value\":1}, {\"begin\":5,\"end\":5,\"value\":2}]",
+				"[{\"begin\":0,\"end\":9,\"value\":1}, {\"begin\":15,\"end\":10,\"value\":2}]" }) {
+			try(MetadataReader reader = new MetadataReader(new StringReader(json))) {
+				assertThat(reader.next(), is(true));
+				reader.next();
+				fail("Read an empty interval: " + json);
+			}
+			catch(IOException e) {
+				assertThat(e.getMessage(), containsString("Metadata interval 1"));
+			}
+		}
+	}
+
+	@Test
+	public void testReadColumns() throws IOException {
+		MetadataColumns columns = MetadataReader.readColumns(new StringReader(PAYLOADS));
+
+		assertThat(columns.size(), is(3));
+		assertThat(columns.value(0), is(1));
+		assertThat(columns.payload(0), is(nullValue()));
+		assertThat(columns.begin(1), is(10));
+		assertThat(((Map<?, ?>)columns.payload(1)).get("word"), is((Object)"cat"));
+		assertThat(columns.end(2), is(20));
+		assertThat((String)columns.payload(2), is("dog"));
+	}
+}
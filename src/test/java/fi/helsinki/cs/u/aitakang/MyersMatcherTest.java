@@ -0,0 +1,85 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import sais.sais;
+
+public class MyersMatcherTest {
+
+	@Test
+	public void testMinDistance() {
+		String text = "banana" + Searches.EOT;
+		MyersMatcher matcher = new MyersMatcher(makeData(text), "bnana");
+
+		assertThat(matcher.minDistance(text, 0, 6), is(1));
+		assertThat(matcher.minDistance(text, 3, 6), is(2));
+		assertThat(matcher.minDistance(text, 0, 0), is(5));
+
+		// Wrapping around the text's end
+		matcher = new MyersMatcher(makeData(text), "na" + Searches.EOT + "ba");
+		assertThat(matcher.minDistance(text, 4, 9), is(0));
+		assertThat(matcher.minDistance(text, -3, 2), is(0));
+	}
+
+	@Test
+	public void testMinDistanceRandom() {
+		Random rng = new Random(0);
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 1000; i++)
+			sb.append("acgt".charAt(rng.nextInt(4)));
+		String text = sb.toString() + Searches.EOT;
+		BackwardsSearchData bsd = makeData(text);
+
+		// Lengths over one and two words
+		for(int i = 0; i < 60; i++) {
+			int m = 1 + rng.nextInt(200);
+			StringBuilder pattern = new StringBuilder();
+			for(int j = 0; j < m; j++)
+				pattern.append("acgtx".charAt(rng.nextInt(5)));
+
+			int from = rng.nextInt(text.length() - 1);
+			int to = Math.min(from + rng.nextInt(300), text.length());
+
+			MyersMatcher matcher = new MyersMatcher(bsd, pattern.toString());
+			assertThat(matcher.minDistance(text, from, to),
+					is(minDistance(pattern.toString(), text.substring(from, to))));
+		}
+	}
+
+	/**
+	 * The least edit distance between the pattern and any substring of the
+	 * text, by the full table.
+	 */
+	private static int minDistance(String pattern, String text) {
+		int m = pattern.length();
+		int[] column = new int[m + 1];
+		for(int i = 0; i <= m; i++)
+			column[i] = i;
+
+		int best = column[m];
+		for(int j = 0; j < text.length(); j++) {
+			int diagonal = column[0];
+			for(int i = 1; i <= m; i++) {
+				int value = Math.min(diagonal
+						+ (pattern.charAt(i - 1) == text.charAt(j) ? 0 : 1),
+						Math.min(column[i], column[i - 1]) + 1);
+				diagonal = column[i];
+				column[i] = value;
+			}
+			best = Math.min(best, column[m]);
+		}
+
+		return best;
+	}
+
+	private static BackwardsSearchData makeData(String text) {
+		int[] sa = new int[text.length()];
+		sais.suffixsort(text, sa, text.length());
+		return new BackwardsSearchData(text, sa);
+	}
+}
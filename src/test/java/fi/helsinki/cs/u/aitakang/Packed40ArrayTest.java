@@ -0,0 +1,37 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Packed40ArrayTest {
+
+	@Test
+	public void testGetSet() {
+		Packed40Array arr = new Packed40Array(1000);
+		long[] expected = new long[1000];
+		
+		Random rng = new Random(0);
+		for(int i = 0; i < expected.length; i++) {
+			expected[i] = (rng.nextLong() >>> 1) % (Packed40Array.MAX_VALUE + 1);
+			arr.set(i, expected[i]);
+		}
+		
+		// Extremes must survive and not disturb their neighbours
+		expected[10] = Packed40Array.MAX_VALUE;
+		arr.set(10, expected[10]);
+		expected[11] = 0;
+		arr.set(11, expected[11]);
+		
+		for(int i = 0; i < expected.length; i++)
+			assertThat("get(" + i + ")", arr.get(i), is(expected[i]));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooLarge() {
+		new Packed40Array(1).set(0, Packed40Array.MAX_VALUE + 1);
+	}
+}
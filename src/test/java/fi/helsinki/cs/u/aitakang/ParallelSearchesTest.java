@@ -0,0 +1,148 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sais.sais;
+
+public class ParallelSearchesTest {
+
+	private ForkJoinPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		this.pool = new ForkJoinPool(4);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.pool.shutdown();
+		this.pool = null;
+	}
+
+	@Test
+	public void testSmall() {
+		String text = "banana" + Searches.EOT;
+		int[] sa = new int[text.length()];
+		sais.suffixsort(text, sa, text.length());
+		BackwardsSearchData bsd = new BackwardsSearchData(text, sa);
+
+		for(int limit = 0; limit <= 3; limit++)
+			for(String pattern: new String[] { "bn", "banana", "bananana", "x" })
+				assertSameAsSequential(text, IntBuffer.wrap(sa), bsd, limit, pattern);
+	}
+
+	@Test
+	public void testRandom() {
+		Random rng = new Random(0);
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 2000; i++)
+			sb.append("acgt".charAt(rng.nextInt(4)));
+		String text = sb.toString() + Searches.EOT;
+
+		int[] sa = new int[text.length()];
+		sais.suffixsort(text, sa, text.length());
+		BackwardsSearchData bsd = new BackwardsSearchData(text, sa);
+
+		for(int i = 0; i < 20; i++) {
+			int begin = rng.nextInt(text.length() - 10);
+			String pattern = text.substring(begin, begin + 4 + rng.nextInt(6));
+
+			assertSameAsSequential(text, IntBuffer.wrap(sa), bsd,
+					1 + rng.nextInt(2), pattern);
+		}
+	}
+
+	@Test
+	public void testSplit() {
+		// Large enough that the top branches have MIN_SPLIT rows and are forked
+		Random rng = new Random(1);
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 20 * ParallelSearches.MIN_SPLIT; i++)
+			sb.append("acgt".charAt(rng.nextInt(4)));
+		String text = sb.toString() + Searches.EOT;
+
+		int[] sa = new int[text.length()];
+		sais.suffixsort(text, sa, text.length());
+		BackwardsSearchData bsd = new BackwardsSearchData(text, sa);
+
+		for(int i = 0; i < 5; i++) {
+			int begin = rng.nextInt(text.length() - 10);
+			String pattern = text.substring(begin, begin + 6 + rng.nextInt(4));
+
+			assertSameAsSequential(text, IntBuffer.wrap(sa), bsd, 2, pattern);
+		}
+	}
+
+	@Test
+	public void testBudget() {
+		Random rng = new Random(2);
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 20 * ParallelSearches.MIN_SPLIT; i++)
+			sb.append("acgt".charAt(rng.nextInt(4)));
+		String text = sb.toString() + Searches.EOT;
+
+		int[] sa = new int[text.length()];
+		sais.suffixsort(text, sa, text.length());
+		BackwardsSearchData bsd = new BackwardsSearchData(text, sa);
+		String pattern = text.substring(100, 109);
+
+		// Shared by all the tasks, each overshooting by at most a batch
+		SearchBudget budget = new SearchBudget(1000, 0, 0);
+		ParallelSearches.inexactBackwardsSearch(text, IntBuffer.wrap(sa), bsd,
+				2, pattern, this.pool, budget);
+		assertThat(budget.isExhausted(), is(true));
+		assertThat(budget.nodes() < 1000 + 4 * 256, is(true));
+
+		budget = new SearchBudget(0, 0, 0);
+		List<InexactMatch> matches = ParallelSearches.inexactBackwardsSearch(text,
+				IntBuffer.wrap(sa), bsd, 2, pattern, this.pool, budget);
+		assertThat(budget.isExhausted(), is(false));
+		assertThat(keys(matches), is(keys(Searches.inexactBackwardsSearch(text,
+				IntBuffer.wrap(sa), bsd, 2, pattern))));
+	}
+
+	@Test
+	public void testSingleThread() {
+		this.pool.shutdown();
+		this.pool = new ForkJoinPool(1);
+
+		String text = "banana" + Searches.EOT;
+		int[] sa = new int[text.length()];
+		sais.suffixsort(text, sa, text.length());
+		BackwardsSearchData bsd = new BackwardsSearchData(text, sa);
+
+		for(int limit = 0; limit <= 2; limit++)
+			assertSameAsSequential(text, IntBuffer.wrap(sa), bsd, limit, "bnana");
+	}
+
+	private void assertSameAsSequential(String text, IntBuffer sa,
+			BackwardsSearchData bsd, int limit, String pattern) {
+		List<InexactMatch> expected = Searches.inexactBackwardsSearch(text, sa,
+				bsd, limit, pattern);
+		List<InexactMatch> actual = ParallelSearches.inexactBackwardsSearch(text,
+				sa, bsd, limit, pattern, this.pool);
+
+		// Equally good matches may have different edits
+		assertThat(keys(actual), is(keys(expected)));
+	}
+
+	private static List<List<Integer>> keys(List<InexactMatch> matches) {
+		List<List<Integer>> keys = new ArrayList<>();
+		for(InexactMatch match: matches)
+			keys.add(Arrays.asList(match.begin, match.end, match.length,
+					match.distance));
+		return keys;
+	}
+}
@@ -0,0 +1,66 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import sais.sais;
+
+public class ParallelSuffixSortTest {
+
+	/**
+	 * Generate a random text over the first sigma characters of the alphabet,
+	 * terminated with EOT.
+	 */
+	private static String randomText(Random rng, String alphabet, int length) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < length; i++)
+			sb.append(alphabet.charAt(rng.nextInt(alphabet.length())));
+		return sb.toString() + Searches.EOT;
+	}
+	
+	private static void assertSameAsSais(String text, int threads) {
+		int[] expected = new int[text.length()];
+		sais.suffixsort(text, expected, text.length());
+		
+		int[] actual = new int[text.length()];
+		assertThat(ParallelSuffixSort.suffixsort(text, actual, text.length(), threads), is(0));
+		
+		assertThat(actual, is(expected));
+	}
+	
+	@Test
+	public void testSmall() {
+		assertSameAsSais("banana" + Searches.EOT, 2);
+		assertSameAsSais("" + Searches.EOT, 2);
+		assertSameAsSais("aaaaaaaaaaaaaaaa" + Searches.EOT, 2);
+	}
+	
+	@Test
+	public void testRandom() {
+		Random rng = new Random(0);
+		
+		// Large enough to be split between threads. A binary alphabet has
+		// long repeats and so needs many rounds.
+		assertSameAsSais(randomText(rng, "ab", 100000), 4);
+		assertSameAsSais(randomText(rng, "acgt", 100000), 4);
+		assertSameAsSais(randomText(rng, "abcdefghijklmnopqrstuvwxyz \u00e4\u4e00", 50000), 3);
+	}
+	
+	@Test
+	public void testPeriodic() {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 20000; i++)
+			sb.append("abc");
+		assertSameAsSais(sb.toString() + Searches.EOT, 4);
+	}
+	
+	@Test
+	public void testInvalid() {
+		assertThat(ParallelSuffixSort.suffixsort("abc", new int[2], 3, 1), is(-1));
+		assertThat(ParallelSuffixSort.suffixsort("abc", new int[3], 3, 0), is(-1));
+	}
+}
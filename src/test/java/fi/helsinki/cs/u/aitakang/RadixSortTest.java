@@ -0,0 +1,52 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RadixSortTest {
+
+	@Test
+	public void testSort() {
+		Random random = new Random(21);
+
+		for(int size: new int[] { 0, 1, 10, 63, 64, 1000, 100000 }) {
+			int[] positions = new int[size];
+			for(int i = 0; i < size; i++)
+				positions[i] = random.nextInt(1 << 20);
+
+			int[] any = new int[size];
+			for(int i = 0; i < size; i++)
+				any[i] = random.nextInt();
+
+			int[] expected = positions.clone();
+			Arrays.sort(expected);
+			RadixSort.sort(positions, size);
+			assertThat(Arrays.equals(positions, expected), is(true));
+
+			// Negative keys sort first
+			expected = any.clone();
+			Arrays.sort(expected);
+			RadixSort.sort(any, size);
+			assertThat(Arrays.equals(any, expected), is(true));
+		}
+	}
+
+	@Test
+	public void testSortPrefix() {
+		int[] a = new int[200];
+		for(int i = 0; i < a.length; i++)
+			a[i] = a.length - i;
+
+		RadixSort.sort(a, 100);
+
+		for(int i = 0; i < 100; i++)
+			assertThat(a[i], is(101 + i));
+		for(int i = 100; i < a.length; i++)
+			assertThat(a[i], is(a.length - i));
+	}
+}
@@ -5,6 +5,17 @@ import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
 import static org.junit.Assert.assertThat;
 
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -14,16 +25,17 @@ import sais.sais;
 public class SearchesTest {
 
 	private String text;
-	private int[] sa;
+	private IntBuffer sa;
 	private BackwardsSearchData bsd;
 
 	@Before
 	public void setUp() throws Exception {
 		this.text = "banana" + Searches.EOT;
-		this.sa = new int[this.text.length()];
+		int[] sa = new int[this.text.length()];
 
-		sais.suffixsort(this.text, this.sa, this.text.length());
+		sais.suffixsort(this.text, sa, this.text.length());
 
+		this.sa = IntBuffer.wrap(sa);
 		this.bsd = new BackwardsSearchData(this.text, sa);
 	}
 
@@ -85,8 +97,9 @@ public class SearchesTest {
 		assertThat(Searches.inexactBinarySearch(text, sa, bsd, 1, "bananana").isEmpty(), is(true));
 		assertThat(Searches.inexactBinarySearch(text, sa, bsd, 2, "bananana").isEmpty(), is(false));
 		
-		// 'bn' with 1 error generates matches 'ban', 'an', 'ba', 'b', 'n'
-		assertThat(Searches.inexactBinarySearch(text, sa, bsd, 1, "bn").size(), is(5));
+		// 'bn' with 1 error matches 'ban', 'an', 'ba', 'b', 'n', but the first
+		// three start at the same position, so only 'ba' is reported
+		assertThat(Searches.inexactBinarySearch(text, sa, bsd, 1, "bn").size(), is(3));
 	}
 	
 	@Test
@@ -103,7 +116,358 @@ public class SearchesTest {
 		assertThat(Searches.inexactBackwardsSearch(text, sa, bsd, 1, "bananana").isEmpty(), is(true));
 		assertThat(Searches.inexactBackwardsSearch(text, sa, bsd, 2, "bananana").isEmpty(), is(false));
 		
-		// 'bn' with 1 error generates matches 'ban', 'an', 'ba', 'b', 'n'
-		assertThat(Searches.inexactBackwardsSearch(text, sa, bsd, 1, "bn").size(), is(5));
+		// 'bn' with 1 error matches 'ban', 'an', 'ba', 'b', 'n', but the first
+		// three start at the same position, so only 'ba' is reported
+		assertThat(Searches.inexactBackwardsSearch(text, sa, bsd, 1, "bn").size(), is(3));
+	}
+	
+	@Test
+	public void testInexactSpecs() {
+		assertThat(Searches.inexactBackwardsSearch(text, sa, bsd, 0, "banana").get(0).spec,
+				is("MMMMMM"));
+		assertThat(Searches.inexactBinarySearch(text, sa, bsd, 0, "banana").get(0).spec,
+				is("MMMMMM"));
+		
+		// Each spec transforms the pattern into a string of the match's length
+		BidirectionalSearchData bid = makeBidirectional(text);
+		List<InexactMatch> matches = new ArrayList<>();
+		matches.addAll(Searches.inexactBinarySearch(text, sa, bsd, 2, "bnana"));
+		matches.addAll(Searches.inexactBackwardsSearch(text, sa, bsd, 2, "bnana"));
+		matches.addAll(Searches.bidirectionalSearch(text, sa, bid, 2, "bnana"));
+		matches.addAll(Searches.dpBackwardsSearch(text, sa, bsd, 2, "bnana"));
+		matches.addAll(Searches.seedSearch(text, sa, bsd, 2, "bnana"));
+		
+		for(InexactMatch match: matches) {
+			int patternChars = 0;
+			int textChars = 0;
+			for(char op: match.spec.toCharArray()) {
+				if(op != 'I')
+					patternChars += 1;
+				if(op != 'D')
+					textChars += 1;
+			}
+			
+			assertThat(patternChars, is(5));
+			assertThat(textChars, is(match.length));
+		}
+	}
+	
+	@Test
+	public void testReportOnce() {
+		List<InexactMatch> matches = Searches.inexactBackwardsSearch(text, sa, bsd, 1, "bn");
+		
+		// 'ba' at 0, 'an' at 1 and 3, 'n' at 2 and 4, by suffix array order
+		assertThat(matches.get(0).begin, is(2));
+		assertThat(matches.get(0).end, is(4));
+		assertThat(matches.get(0).length, is(2));
+		assertThat(matches.get(1).begin, is(4));
+		assertThat(matches.get(1).end, is(5));
+		assertThat(matches.get(1).length, is(2));
+		assertThat(matches.get(1).spec, is("MR"));
+		assertThat(matches.get(2).begin, is(5));
+		assertThat(matches.get(2).end, is(7));
+		assertThat(matches.get(2).length, is(1));
+		
+		// Each suffix array position is reported once, with the fewest edits
+		for(int limit = 0; limit <= 3; limit++) {
+			List<InexactMatch> results = Searches.inexactBackwardsSearch(text, sa,
+					bsd, limit, "anna");
+			for(int i = 1; i < results.size(); i++)
+				assertThat(results.get(i - 1).end <= results.get(i).begin, is(true));
+			for(InexactMatch result: results)
+				assertThat(result.distance <= limit, is(true));
+		}
+	}
+	
+	@Test
+	public void testBidirectionalSearch() {
+		BidirectionalSearchData bid = makeBidirectional(text);
+		
+		assertThat(Searches.bidirectionalSearch(text, sa, bid, 1, "bn").size(), is(3));
+		assertThat(Searches.bidirectionalSearch(text, sa, bid, 0, "banana").size(), is(1));
+		assertThat(Searches.bidirectionalSearch(text, sa, bid, 1, "bananana").isEmpty(), is(true));
+		
+		for(int limit = 0; limit <= 3; limit++)
+			for(String pattern: new String[] { "bn", "banana", "bananana", "nab", "x" })
+				assertThat(keys(Searches.bidirectionalSearch(text, sa, bid, limit, pattern)),
+						is(keys(Searches.inexactBackwardsSearch(text, sa, bsd, limit, pattern))));
+	}
+	
+	@Test
+	public void testDpBackwardsSearch() {
+		assertThat(Searches.dpBackwardsSearch(text, sa, bsd, 1, "bn").size(), is(3));
+		assertThat(Searches.dpBackwardsSearch(text, sa, bsd, 0, "banana").get(0).spec,
+				is("MMMMMM"));
+		assertThat(Searches.dpBackwardsSearch(text, sa, bsd, 1, "bananana").isEmpty(), is(true));
+		
+		for(int limit = 0; limit <= 3; limit++)
+			for(String pattern: new String[] { "bn", "banana", "bananana", "nab", "x", "" })
+				assertThat(keys(Searches.dpBackwardsSearch(text, sa, bsd, limit, pattern)),
+						is(keys(Searches.inexactBackwardsSearch(text, sa, bsd, limit, pattern))));
+	}
+	
+	@Test
+	public void testHammingBackwardsSearch() {
+		List<InexactMatch> matches = Searches.hammingBackwardsSearch(text, sa, bsd, 1, "bnnana");
+		assertThat(matches.size(), is(1));
+		assertThat(matches.get(0).begin, is(4));
+		assertThat(matches.get(0).spec, is("MRMMMM"));
+		assertThat(matches.get(0).distance, is(1));
+		
+		// Nothing but replacements
+		assertThat(Searches.hammingBackwardsSearch(text, sa, bsd, 1, "nnbn").isEmpty(), is(true));
+		assertThat(Searches.hammingBackwardsSearch(text, sa, bsd, 0, "ana").get(0).end
+				- Searches.hammingBackwardsSearch(text, sa, bsd, 0, "ana").get(0).begin, is(2));
+		
+		// Compare to checking each position, the text read cyclically as in
+		// backwards search
+		RandomIndex index = new RandomIndex(new Random(0), 1000,
+				BackwardsSearchData.RankBackend.blocks, 0);
+		String text = index.text;
+		int[] sa = index.sa;
+		BackwardsSearchData bsd = index.bsd;
+		int n = text.length();
+		
+		for(int k = 0; k <= 2; k++) {
+			String pattern = text.substring(100 + 10 * k, 108 + 10 * k);
+			
+			Map<Integer, Integer> expected = new HashMap<>();
+			for(int i = 0; i < n; i++) {
+				int mismatches = 0;
+				for(int j = 0; j < pattern.length(); j++)
+					if(text.charAt((i + j) % n) != pattern.charAt(j))
+						mismatches += 1;
+				if(mismatches <= k)
+					expected.put(i, mismatches);
+			}
+			
+			Map<Integer, Integer> found = new HashMap<>();
+			for(InexactMatch match: Searches.hammingBackwardsSearch(text,
+					IntBuffer.wrap(sa), bsd, k, pattern))
+				for(int row = match.begin; row < match.end; row++)
+					found.put(sa[row], match.distance);
+			
+			assertThat(found, is(expected));
+		}
+	}
+	
+	@Test
+	public void testBidirectionalSearchRandom() {
+		Random rng = new Random(0);
+		RandomIndex index = new RandomIndex(rng, 2000,
+				BackwardsSearchData.RankBackend.blocks, 0);
+		String text = index.text;
+		IntBuffer saBuffer = IntBuffer.wrap(index.sa);
+		BackwardsSearchData bsd = index.bsd;
+		BidirectionalSearchData bid = index.bidirectional();
+		
+		for(int i = 0; i < 20; i++) {
+			int begin = rng.nextInt(text.length() - 10);
+			String pattern = text.substring(begin, begin + 4 + rng.nextInt(6));
+			int limit = 1 + rng.nextInt(2);
+			
+			// Some with characters not in the text
+			if(i % 2 == 1) {
+				int at = rng.nextInt(pattern.length());
+				pattern = pattern.substring(0, at) + "x" + pattern.substring(at + 1);
+			}
+			
+			List<InexactMatch> expected = Searches.inexactBackwardsSearch(text,
+					saBuffer, bsd, limit, pattern);
+			assertThat(keys(Searches.bidirectionalSearch(text, saBuffer, bid, limit, pattern)),
+					is(keys(expected)));
+			
+			// Pruning with lower bounds finds the same
+			assertThat(keys(Searches.inexactBackwardsSearch(text, saBuffer, bid, limit, pattern)),
+					is(keys(expected)));
+			
+			assertThat(keys(Searches.dpBackwardsSearch(text, saBuffer, bsd, limit, pattern)),
+					is(keys(expected)));
+			assertThat(keys(Searches.dpBackwardsSearch(text, saBuffer, bid, limit, pattern)),
+					is(keys(expected)));
+			assertThat(keys(Searches.seedSearch(text, saBuffer, bsd, limit, pattern)),
+					is(keys(expected)));
+		}
+	}
+
+	@Test
+	public void testTopBackwardsSearch() {
+		// 'an' at rows 2 and 3 is as good as any, and first by row
+		List<InexactMatch> top = Searches.topBackwardsSearch(text, sa, bsd, 1, 1, "bn");
+		assertThat(top.size(), is(1));
+		assertThat(top.get(0).begin, is(2));
+		assertThat(top.get(0).end, is(3));
+		assertThat(top.get(0).distance, is(1));
+
+		// Asking for more than there are finds them all
+		assertThat(keys(Searches.topBackwardsSearch(text, sa, bsd, 1, 100, "bn")),
+				is(keys(Searches.inexactBackwardsSearch(text, sa, bsd, 1, "bn"))));
+		assertThat(Searches.topBackwardsSearch(text, sa, bsd, 2, 1, "banana").get(0).spec,
+				is("MMMMMM"));
+
+		Random rng = new Random(3);
+		RandomIndex index = new RandomIndex(rng, 2000,
+				BackwardsSearchData.RankBackend.blocks, 0);
+		String text = index.text;
+		IntBuffer saBuffer = IntBuffer.wrap(index.sa);
+		BackwardsSearchData bsd = index.bsd;
+		BidirectionalSearchData bid = index.bidirectional();
+
+		for(int i = 0; i < 20; i++) {
+			int begin = rng.nextInt(text.length() - 10);
+			String pattern = text.substring(begin, begin + 4 + rng.nextInt(6));
+			int limit = 1 + rng.nextInt(2);
+			int k = 1 + rng.nextInt(50);
+
+			// The distances of the k best occurrences are the same
+			List<Integer> expected = distances(
+					Searches.inexactBackwardsSearch(text, saBuffer, bsd, limit, pattern));
+			expected = expected.subList(0, Math.min(k, expected.size()));
+
+			assertThat(distances(Searches.topBackwardsSearch(text, saBuffer, bsd,
+					limit, k, pattern)), is(expected));
+			assertThat(distances(Searches.topBackwardsSearch(text, saBuffer, bid,
+					limit, k, pattern)), is(expected));
+		}
+	}
+
+	/**
+	 * The distance of each occurrence, in increasing order.
+	 */
+	private static List<Integer> distances(List<InexactMatch> matches) {
+		List<Integer> distances = new ArrayList<>();
+		for(InexactMatch match: matches)
+			for(int i = match.begin; i < match.end; i++)
+				distances.add(match.distance);
+		Collections.sort(distances);
+		return distances;
+	}
+
+	@Test
+	public void testSearchBudget() {
+		SearchBudget unlimited = SearchBudget.unlimited();
+		assertThat(Searches.inexactBackwardsSearch(text, sa, bsd, 1, "bn", unlimited).size(), is(3));
+		assertThat(unlimited.isExhausted(), is(false));
+
+		// Stopping at the first match
+		SearchBudget budget = new SearchBudget(0, 1, 0);
+		assertThat(Searches.inexactBackwardsSearch(text, sa, bsd, 1, "bn", budget).size(), is(1));
+		assertThat(budget.isExhausted(), is(true));
+		assertThat(Searches.inexactBinarySearch(text, sa, bsd, 1, "bn", budget).size(), is(1));
+		assertThat(budget.isExhausted(), is(true));
+
+		// Stopping before the first match, and restarting for each search
+		budget = new SearchBudget(2, 0, 0);
+		assertThat(Searches.inexactBackwardsSearch(text, sa, bsd, 1, "bn", budget).isEmpty(), is(true));
+		assertThat(budget.isExhausted(), is(true));
+		assertThat(Searches.inexactBinarySearch(text, sa, bsd, 1, "bn", budget).isEmpty(), is(true));
+		assertThat(budget.nodes(), is(3L));
+	}
+
+	@Test
+	public void testLongPattern() {
+		// Deeper than recursion would manage
+		RandomIndex index = new RandomIndex(new Random(2), 60000,
+				BackwardsSearchData.RankBackend.wavelet, 0);
+		String text = index.text;
+		int[] sa = index.sa;
+		IntBuffer saBuffer = IntBuffer.wrap(sa);
+		BackwardsSearchData bsd = index.bsd;
+
+		// Found exactly, and with an edit at the neighbouring starts
+		String pattern = text.substring(1000, 51000);
+		for(List<InexactMatch> matches: Arrays.asList(
+				Searches.inexactBackwardsSearch(text, saBuffer, bsd, 1, pattern),
+				Searches.inexactBinarySearch(text, saBuffer, bsd, 1, pattern))) {
+			int exact = 0;
+			for(InexactMatch match: matches) {
+				if(match.distance == 0) {
+					assertThat(sa[match.begin], is(1000));
+					exact += 1;
+				}
+			}
+			assertThat(exact, is(1));
+		}
+	}
+
+	@Test
+	public void testSeedSearch() {
+		assertThat(keys(Searches.seedSearch(this.text, this.sa, this.bsd, 1, "bnana")),
+				is(keys(Searches.inexactBackwardsSearch(this.text, this.sa, this.bsd, 1, "bnana"))));
+
+		// Longer patterns, locating from the sampled suffix array
+		Random rng = new Random(1);
+		RandomIndex index = new RandomIndex(rng, 3000,
+				BackwardsSearchData.RankBackend.blocks, 8);
+		String text = index.text;
+		BackwardsSearchData bsd = index.bsd;
+		BidirectionalSearchData bid = index.bidirectional();
+
+		for(int i = 0; i < 20; i++) {
+			int begin = rng.nextInt(text.length() - 40);
+			StringBuilder pattern = new StringBuilder(
+					text.substring(begin, begin + 15 + rng.nextInt(25)));
+			int limit = 1 + rng.nextInt(3);
+
+			for(int j = rng.nextInt(limit + 1); j > 0; j--)
+				pattern.setCharAt(rng.nextInt(pattern.length()),
+						"acgt".charAt(rng.nextInt(4)));
+
+			List<InexactMatch> expected = Searches.inexactBackwardsSearch(text,
+					null, bid, limit, pattern.toString());
+			List<InexactMatch> actual = Searches.seedSearch(text, null, bsd,
+					limit, pattern.toString());
+
+			assertThat(keys(actual), is(keys(expected)));
+		}
+	}
+
+	private static BidirectionalSearchData makeBidirectional(String text) {
+		int[] sa = new int[text.length()];
+		sais.suffixsort(text, sa, text.length());
+		
+		String reversed = BidirectionalSearchData.reverse(text);
+		int[] reversedSa = new int[reversed.length()];
+		sais.suffixsort(reversed, reversedSa, reversed.length());
+		
+		return new BidirectionalSearchData(new BackwardsSearchData(text, sa),
+				new BackwardsSearchData(reversed, reversedSa));
+	}
+	
+	/**
+	 * A random DNA text of the given length, drawn from rng, with its suffix
+	 * array and backwards search data.
+	 */
+	private static class RandomIndex {
+		final String text;
+		final int[] sa;
+		final BackwardsSearchData bsd;
+		
+		RandomIndex(Random rng, int length, BackwardsSearchData.RankBackend backend,
+				int sampleRate) {
+			StringBuilder sb = new StringBuilder();
+			for(int i = 0; i < length; i++)
+				sb.append("acgt".charAt(rng.nextInt(4)));
+			this.text = sb.toString() + Searches.EOT;
+			
+			this.sa = new int[this.text.length()];
+			sais.suffixsort(this.text, this.sa, this.text.length());
+			this.bsd = new BackwardsSearchData(this.text, this.sa, backend, sampleRate);
+		}
+		
+		BidirectionalSearchData bidirectional() {
+			return makeBidirectional(this.text);
+		}
+	}
+	
+	/**
+	 * The ranges, lengths and distances of the matches.
+	 */
+	private static Set<List<Integer>> keys(List<InexactMatch> matches) {
+		Set<List<Integer>> keys = new HashSet<>();
+		for(InexactMatch match: matches)
+			keys.add(Arrays.asList(match.begin, match.end, match.length,
+					match.distance));
+		return keys;
 	}
 }
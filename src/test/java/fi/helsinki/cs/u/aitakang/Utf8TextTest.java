@@ -0,0 +1,83 @@
+package fi.helsinki.cs.u.aitakang;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sais.sais;
+
+public class Utf8TextTest {
+
+	private String decoded;
+	private Utf8Text text;
+	private IntBuffer sa;
+	private BackwardsSearchData bsd;
+
+	@Before
+	public void setUp() throws Exception {
+		this.decoded = "b\u00e4n\u00e4n\u00e4 \ud83d\ude00 banana";
+		
+		byte[] raw = this.decoded.getBytes(StandardCharsets.UTF_8);
+		byte[] bytes = Arrays.copyOf(raw, raw.length + 1);
+		bytes[raw.length] = (byte)Searches.EOT;
+		
+		int[] sa = new int[bytes.length];
+		sais.suffixsort(bytes, sa, bytes.length);
+		
+		this.text = new Utf8Text(ByteBuffer.wrap(bytes));
+		this.sa = IntBuffer.wrap(sa);
+		this.bsd = new BackwardsSearchData(this.text, sa);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		this.text = null;
+		this.sa = null;
+		this.bsd = null;
+	}
+
+	@Test
+	public void testSearch() {
+		// Both searches find the same two overlapping occurrences of the
+		// encoded pattern
+		String pattern = Utf8Text.encode("\u00e4n\u00e4");
+		assertThat(pattern.length(), is(5));
+		
+		Match binary = Searches.binarySearch(this.text, this.sa, pattern);
+		Match backwards = Searches.backwardsSearch(this.text, this.sa, this.bsd, pattern);
+		
+		assertThat(binary.end - binary.begin, is(2));
+		assertThat(backwards.begin, is(binary.begin));
+		assertThat(backwards.end, is(binary.end));
+		assertThat(this.sa.get(binary.begin), is(4));
+		assertThat(this.sa.get(binary.begin + 1), is(1));
+		
+		// The alphabet is bytes
+		assertThat(this.bsd.sigma() <= 256, is(true));
+		assertThat(Searches.backwardsSearch(this.text, this.sa, this.bsd,
+				Utf8Text.encode("\u00f6")), nullValue());
+	}
+	
+	@Test
+	public void testByteOffsets() {
+		// b \u00e4 n \u00e4 n \u00e4 ' ' emoji ' ' b ...
+		int[] chars = { 0, 1, 2, 7, 9, 10, this.decoded.length() };
+		int[] bytes = { 0, 1, 3, 10, 14, 15, this.decoded.length() + 5 };
+		
+		assertThat(this.text.toByteOffsets(chars), is(bytes));
+	}
+	
+	@Test
+	public void testToString() {
+		assertThat(this.text.subSequence(0, 3).toString(), is("b\u00e4"));
+	}
+}